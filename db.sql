@@ -117,4 +117,68 @@ CREATE TABLE user_devices (
 
 ALTER TABLE user_devices ADD COLUMN is_online BOOLEAN NOT NULL DEFAULT FALSE;
 
-DROP TABLE jwt_tokens;
\ No newline at end of file
+DROP TABLE jwt_tokens;
+
+CREATE INDEX chat_messages_idx_room_sent_at_id ON messages(chat_room_id, sent_at, id);
+DROP INDEX chat_messages_idx_chat_id;
+
+ALTER SEQUENCE messages_id_seq INCREMENT BY 50;
+
+ALTER TABLE chat_room_memberships ADD COLUMN last_delivered_message_id BIGINT DEFAULT NULL;
+ALTER TABLE chat_room_memberships ADD COLUMN last_delivered_at TIMESTAMP WITH TIME ZONE DEFAULT NULL;
+ALTER TABLE chat_room_memberships ADD COLUMN last_read_message_id BIGINT DEFAULT NULL;
+ALTER TABLE chat_room_memberships ADD COLUMN last_read_at TIMESTAMP WITH TIME ZONE DEFAULT NULL;
+
+CREATE INDEX chat_room_memberships_idx_room_user ON chat_room_memberships(chat_room_id, user_id);
+
+-- Backfill delivery/read watermarks from the per-recipient rows.
+-- message_recipients is no longer written and is kept only until the backfill is verified.
+-- Ids are not monotonic in send order, the watermark is the row last in (sent_at, id) order.
+UPDATE chat_room_memberships crm
+SET last_delivered_message_id = d.message_id,
+    last_delivered_at = d.delivered_at
+FROM (
+    SELECT DISTINCT ON (m.chat_room_id, mr.recipient_id)
+           m.chat_room_id,
+           mr.recipient_id,
+           m.id AS message_id,
+           MAX(mr.delivered_at) OVER (PARTITION BY m.chat_room_id, mr.recipient_id) AS delivered_at
+    FROM message_recipients mr
+    JOIN messages m ON m.id = mr.message_id
+    WHERE mr.status IN ('DELIVERED', 'READ')
+    ORDER BY m.chat_room_id, mr.recipient_id, m.sent_at DESC, m.id DESC
+) d
+WHERE crm.chat_room_id = d.chat_room_id
+  AND crm.user_id = d.recipient_id;
+
+UPDATE chat_room_memberships crm
+SET last_read_message_id = r.message_id,
+    last_read_at = r.read_at
+FROM (
+    SELECT DISTINCT ON (m.chat_room_id, mr.recipient_id)
+           m.chat_room_id,
+           mr.recipient_id,
+           m.id AS message_id,
+           MAX(mr.read_at) OVER (PARTITION BY m.chat_room_id, mr.recipient_id) AS read_at
+    FROM message_recipients mr
+    JOIN messages m ON m.id = mr.message_id
+    WHERE mr.status = 'READ'
+    ORDER BY m.chat_room_id, mr.recipient_id, m.sent_at DESC, m.id DESC
+) r
+WHERE crm.chat_room_id = r.chat_room_id
+  AND crm.user_id = r.recipient_id;
+
+-- Client-assigned message ids make the write-behind insert idempotent per sender
+ALTER TABLE messages ADD COLUMN client_message_id VARCHAR(255) DEFAULT NULL;
+CREATE UNIQUE INDEX messages_uq_client_message_id_sender ON messages(client_message_id, sender_id);
+
+-- Watermarks are (sent_at, id) positions in the history order, ids alone are not monotonic in time
+ALTER TABLE chat_room_memberships ADD COLUMN last_delivered_sent_at TIMESTAMP WITH TIME ZONE DEFAULT NULL;
+ALTER TABLE chat_room_memberships ADD COLUMN last_read_sent_at TIMESTAMP WITH TIME ZONE DEFAULT NULL;
+
+-- The watermark rows above are already the latest in (sent_at, id) order, copy their position
+UPDATE chat_room_memberships crm
+SET last_delivered_sent_at = (SELECT m.sent_at FROM messages m WHERE m.id = crm.last_delivered_message_id),
+    last_read_sent_at = (SELECT m.sent_at FROM messages m WHERE m.id = crm.last_read_message_id)
+WHERE crm.last_delivered_message_id IS NOT NULL
+   OR crm.last_read_message_id IS NOT NULL;
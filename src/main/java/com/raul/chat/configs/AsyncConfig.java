@@ -0,0 +1,156 @@
+package com.raul.chat.configs;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One bounded executor per {@code @Async} workload, so a slow SMTP or FCM endpoint
+ * can not starve delivery tracking. Pool gauges (active threads, queue depth) are
+ * published by Boot's executor metrics; wait and run times are timed here.
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+@EnableConfigurationProperties(AsyncProperties.class)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AsyncConfig implements AsyncConfigurer {
+    public static final String NOTIFICATION_EXECUTOR = "notificationExecutor";
+    public static final String PUSH_EXECUTOR = "pushExecutor";
+    public static final String DELIVERY_EXECUTOR = "deliveryExecutor";
+    public static final String EMAIL_EXECUTOR = "emailExecutor";
+    public static final String BACKGROUND_EXECUTOR = "backgroundExecutor";
+
+    AsyncProperties asyncProperties;
+    MeterRegistry meterRegistry;
+
+    @Bean(NOTIFICATION_EXECUTOR)
+    public AsyncTaskExecutor notificationExecutor() {
+        return createExecutor(NOTIFICATION_EXECUTOR);
+    }
+
+    @Bean(PUSH_EXECUTOR)
+    public AsyncTaskExecutor pushExecutor() {
+        return createExecutor(PUSH_EXECUTOR);
+    }
+
+    @Bean(DELIVERY_EXECUTOR)
+    public AsyncTaskExecutor deliveryExecutor() {
+        return createExecutor(DELIVERY_EXECUTOR);
+    }
+
+    @Bean(EMAIL_EXECUTOR)
+    public AsyncTaskExecutor emailExecutor() {
+        return createExecutor(EMAIL_EXECUTOR);
+    }
+
+    @Bean(BACKGROUND_EXECUTOR)
+    public AsyncTaskExecutor backgroundExecutor() {
+        return createExecutor(BACKGROUND_EXECUTOR);
+    }
+
+    /**
+     * Used by any {@code @Async} method that does not name an executor.
+     */
+    @Override
+    public Executor getAsyncExecutor() {
+        return backgroundExecutor();
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (ex, method, params) ->
+                log.error("Async method {}.{} failed: {}", method.getDeclaringClass().getSimpleName(),
+                        method.getName(), ex.getMessage(), ex);
+    }
+
+    private AsyncTaskExecutor createExecutor(String name) {
+        AsyncProperties.Pool pool = asyncProperties.executors().get(name);
+        if (pool == null) {
+            throw new IllegalStateException("No chat.async.executors entry for " + name);
+        }
+        String threadNamePrefix = name.replace("Executor", "") + "-";
+
+        if (asyncProperties.virtualThreads()) {
+            requireVirtualThreads("chat.async.virtual-threads");
+            // Concurrency is still capped at the pool's max size
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(pool.maxSize());
+            executor.setTaskDecorator(timed(name));
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(pool.coreSize());
+        executor.setMaxPoolSize(pool.maxSize());
+        executor.setQueueCapacity(pool.queueCapacity());
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler(rejectionHandler(pool.rejection()));
+        executor.setTaskDecorator(timed(name));
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    /**
+     * Fails startup with a configuration error when virtual threads are enabled on a runtime
+     * older than Java 21, where {@link SimpleAsyncTaskExecutor} would only fail on the first task.
+     */
+    public static void requireVirtualThreads(String property) {
+        int feature = Runtime.version().feature();
+        if (feature < 21) {
+            throw new IllegalStateException(property + "=true requires a Java 21+ runtime, but this is Java "
+                    + feature + "; disable it or upgrade the runtime");
+        }
+    }
+
+    private TaskDecorator timed(String name) {
+        Timer waitTimer = Timer.builder("chat.async.task.wait")
+                .description("Time a task spent queued before it started")
+                .tag("executor", name)
+                .register(meterRegistry);
+        Timer runTimer = Timer.builder("chat.async.task.run")
+                .description("Time a task spent running")
+                .tag("executor", name)
+                .register(meterRegistry);
+
+        return task -> {
+            long submittedAt = System.nanoTime();
+            return () -> {
+                long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                try {
+                    task.run();
+                } finally {
+                    runTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            };
+        };
+    }
+
+    private RejectedExecutionHandler rejectionHandler(AsyncProperties.RejectionPolicy policy) {
+        return switch (policy) {
+            case CALLER_RUNS -> new ThreadPoolExecutor.CallerRunsPolicy();
+            case ABORT -> new ThreadPoolExecutor.AbortPolicy();
+            case DISCARD -> new ThreadPoolExecutor.DiscardPolicy();
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.raul.chat.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+/**
+ * Sizing of the named {@code @Async} executors, keyed by executor bean name.
+ */
+@ConfigurationProperties(prefix = "chat.async")
+public record AsyncProperties(
+        boolean virtualThreads,
+        Map<String, Pool> executors
+) {
+
+    public record Pool(
+            int coreSize,
+            int maxSize,
+            int queueCapacity,
+            RejectionPolicy rejection
+    ) {
+    }
+
+    public enum RejectionPolicy {
+        /** Run the task on the submitting thread, slowing the producer down. */
+        CALLER_RUNS,
+        /** Fail the submission with a TaskRejectedException. */
+        ABORT,
+        /** Drop the task. */
+        DISCARD,
+    }
+}
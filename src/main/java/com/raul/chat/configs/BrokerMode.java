@@ -0,0 +1,8 @@
+package com.raul.chat.configs;
+
+public enum BrokerMode {
+    /** In-memory broker, subscriptions only reach clients of this node. */
+    SIMPLE,
+    /** Relay to an external STOMP broker shared by every node. */
+    RELAY,
+}
@@ -3,6 +3,7 @@ package com.raul.chat.configs;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,6 +11,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 
 @Configuration
+// Off in test contexts that have no service account; pushes then fail and are only logged
+@ConditionalOnProperty(prefix = "chat.push", name = "enabled", matchIfMissing = true)
 public class FirebaseConfig {
 
     @Bean
@@ -55,6 +55,7 @@ public class SecurityConfig {
                                         "/swagger-resources/**",
                                         "/swagger-ui.html",
                                         "/ws/**",
+                                        "/ws-native",
                                         "/index.html"
                                 ).permitAll()
                                 .anyRequest()
@@ -0,0 +1,116 @@
+package com.raul.chat.configs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Counts STOMP frames and bytes per direction, message type and destination, and
+ * optionally logs a sample of frames. Only header values and payload sizes are read,
+ * payloads are never copied or formatted.
+ */
+@Component
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StompFrameTracer {
+    static Pattern ID_SEGMENT = Pattern.compile(
+            "(?<=[/.])([0-9]+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12})(?=$|[/.])");
+    // Resolved user destinations end in the session id, e.g. /queue/messages-user3f2a
+    static Pattern USER_SESSION_SUFFIX = Pattern.compile("-user[^/]+$");
+    // Destinations are client-controlled, only the ones the application serves are used as tags
+    static Pattern KNOWN_DESTINATION = Pattern.compile("^(?:"
+            + "/app/(?:chat\\.send|update-status|rooms/\\{id}/read-up-to|online-users)"
+            + "|/topic/chat-room\\.\\{id}(?:\\.receipts)?"
+            + "|/topic/(?:unresolved-user-destination|simp-user-registry)"
+            + "|(?:/user(?:/\\{id})?)?/queue/(?:messages|acks|notifications|online-users|presence|errors)(?:-user\\{session})?"
+            + ")$");
+    static String OTHER_DESTINATION = "other";
+
+    public enum Direction { INBOUND, OUTBOUND }
+
+    MeterRegistry meterRegistry;
+    boolean tracingEnabled;
+    double sampleRate;
+    List<String> tracedDestinations;
+    Set<String> tracedUsers;
+    Map<String, FrameMeters> meters = new ConcurrentHashMap<>();
+
+    public StompFrameTracer(MeterRegistry meterRegistry,
+                            @Value("${chat.websocket.tracing.enabled}") boolean tracingEnabled,
+                            @Value("${chat.websocket.tracing.sample-rate}") double sampleRate,
+                            @Value("${chat.websocket.tracing.destinations}") List<String> tracedDestinations,
+                            @Value("${chat.websocket.tracing.users}") Set<String> tracedUsers) {
+        this.meterRegistry = meterRegistry;
+        this.tracingEnabled = tracingEnabled;
+        this.sampleRate = sampleRate;
+        this.tracedDestinations = tracedDestinations;
+        this.tracedUsers = tracedUsers;
+    }
+
+    public void record(Direction direction, Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        int bytes = message.getPayload() instanceof byte[] payload ? payload.length : 0;
+
+        String normalized = destination == null ? "none" : normalize(destination);
+        String typeName = type == null ? "OTHER" : type.name();
+        FrameMeters frameMeters = meters.computeIfAbsent(direction + "|" + typeName + "|" + normalized,
+                key -> new FrameMeters(
+                        meterRegistry.counter("chat.stomp.frames",
+                                "direction", direction.name(), "type", typeName, "destination", normalized),
+                        meterRegistry.counter("chat.stomp.bytes",
+                                "direction", direction.name(), "type", typeName, "destination", normalized)));
+        frameMeters.frames().increment();
+        frameMeters.bytes().increment(bytes);
+
+        if (tracingEnabled && shouldTrace(destination, SimpMessageHeaderAccessor.getUser(headers))) {
+            log.info("STOMP {} {} destination={} user={} session={} bytes={}", direction, typeName, destination,
+                    userName(SimpMessageHeaderAccessor.getUser(headers)),
+                    SimpMessageHeaderAccessor.getSessionId(headers), bytes);
+        }
+    }
+
+    /**
+     * Collapses ids and session suffixes, and any destination the application does not
+     * serve into {@code other}, so a client can not create an unbounded number of meters.
+     */
+    private String normalize(String destination) {
+        String withoutIds = ID_SEGMENT.matcher(destination).replaceAll("{id}");
+        String normalized = USER_SESSION_SUFFIX.matcher(withoutIds).replaceAll("-user{session}");
+        return KNOWN_DESTINATION.matcher(normalized).matches() ? normalized : OTHER_DESTINATION;
+    }
+
+    private boolean shouldTrace(String destination, Principal user) {
+        if (user != null && tracedUsers.contains(user.getName())) return true;
+        if (destination != null) {
+            for (String prefix : tracedDestinations) {
+                if (destination.startsWith(prefix)) return true;
+            }
+        }
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private String userName(Principal user) {
+        return user == null ? "-" : user.getName();
+    }
+
+    private record FrameMeters(Counter frames, Counter bytes) {
+    }
+}
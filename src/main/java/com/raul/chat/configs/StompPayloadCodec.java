@@ -0,0 +1,329 @@
+package com.raul.chat.configs;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.Nullable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.temporal.Temporal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Per-session payload encoding for STOMP. On CONNECT a session can opt into CBOR
+ * ({@code x-payload-format: cbor}) and into deflating large payloads
+ * ({@code x-compression: deflate}). Both produce binary frames, which need a raw
+ * WebSocket, so only sessions opened on the native endpoint can negotiate them.
+ * Inbound CBOR is read by {@link #cborConverter()}; outbound payloads are re-encoded
+ * per session, once per shared payload. CBOR is always written from the object the JSON
+ * was written from, carried in {@link #SOURCE_HEADER}, so timestamps are epoch milliseconds
+ * whichever path sent the payload. Frames without a source object (e.g. sent by clients
+ * straight to a broker destination) stay JSON and carry no format header. With the broker
+ * relay every frame reaches the session from the external broker without its source, so
+ * CBOR is only negotiated with the simple broker.
+ */
+@Component
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StompPayloadCodec {
+    public static final String FORMAT_HEADER = "x-payload-format";
+    public static final String COMPRESSION_HEADER = "x-compression";
+    static String CONTENT_ENCODING_HEADER = "content-encoding";
+    static String PERMESSAGE_DEFLATE = "permessage-deflate";
+    static String NATIVE_TRANSPORT_ATTRIBUTE = "nativeTransport";
+    static MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+    // Non-native header, it is never written to the STOMP frame
+    public static final String SOURCE_HEADER = "chatPayloadSource";
+
+    private record SessionEncoding(boolean cbor, boolean deflate) {
+    }
+
+    ObjectMapper objectMapper;
+    CBORMapper cborMapper;
+    BrokerMode brokerMode;
+    boolean permessageDeflate;
+    int compressionThreshold;
+    int compressionLevel;
+    Map<String, SessionEncoding> sessions = new ConcurrentHashMap<>();
+    // Keyed by source identity: a broadcast shares one source object across all subscribers
+    Cache<Object, byte[]> transcoded = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(10_000)
+            .build();
+    Cache<byte[], byte[]> compressed = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(10_000)
+            .build();
+    Counter compressionInputBytes;
+    Counter compressionOutputBytes;
+    DistributionSummary compressionRatio;
+    Timer compressionTimer;
+
+    public StompPayloadCodec(ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${chat.websocket.broker.mode}") BrokerMode brokerMode,
+                             @Value("${chat.websocket.compression.permessage-deflate}") boolean permessageDeflate,
+                             @Value("${chat.websocket.compression.threshold-bytes}") int compressionThreshold,
+                             @Value("${chat.websocket.compression.level}") int compressionLevel) {
+        this.objectMapper = objectMapper;
+        this.cborMapper = cborMapper();
+        this.brokerMode = brokerMode;
+        this.permessageDeflate = permessageDeflate;
+        this.compressionThreshold = compressionThreshold;
+        this.compressionLevel = compressionLevel;
+        this.compressionInputBytes = meterRegistry.counter("chat.stomp.compression.bytes", "stage", "input");
+        this.compressionOutputBytes = meterRegistry.counter("chat.stomp.compression.bytes", "stage", "output");
+        this.compressionRatio = DistributionSummary.builder("chat.stomp.compression.ratio")
+                .description("Compressed size divided by original size")
+                .register(meterRegistry);
+        this.compressionTimer = meterRegistry.timer("chat.stomp.compression.time");
+    }
+
+    /**
+     * CBOR mapper that writes every {@code java.time} value as an epoch-millisecond number,
+     * overriding the string formats the DTOs declare for JSON.
+     */
+    public static CBORMapper cborMapper() {
+        return CBORMapper.builder()
+                .addModule(new JavaTimeModule())
+                .annotationIntrospector(new NumericTemporalIntrospector())
+                .enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS)
+                .disable(DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS)
+                .build();
+    }
+
+    private static final class NumericTemporalIntrospector extends JacksonAnnotationIntrospector {
+
+        @Override
+        public JsonFormat.Value findFormat(Annotated annotated) {
+            JsonFormat.Value format = super.findFormat(annotated);
+            if (format != null && Temporal.class.isAssignableFrom(annotated.getRawType())) {
+                return format.withShape(JsonFormat.Shape.NUMBER).withPattern("");
+            }
+            return format;
+        }
+    }
+
+    /**
+     * JSON converter for the messaging templates that keeps the converted object in
+     * {@link #SOURCE_HEADER}, so every converted payload can be written to CBOR directly.
+     */
+    public MessageConverter jsonConverter() {
+        DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+        resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter() {
+            @Override
+            public Message<?> toMessage(Object payload, @Nullable MessageHeaders headers,
+                                        @Nullable Object conversionHint) {
+                Message<?> message = super.toMessage(payload, headers, conversionHint);
+                if (message == null) return null;
+                MessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class);
+                if (accessor != null && accessor.isMutable()) {
+                    accessor.setHeader(SOURCE_HEADER, payload);
+                    return message;
+                }
+                return MessageBuilder.fromMessage(message).setHeader(SOURCE_HEADER, payload).build();
+            }
+        };
+        // Same mapper as EncodedMessageSender, so converted and pre-encoded payloads match
+        converter.setObjectMapper(objectMapper);
+        converter.setContentTypeResolver(resolver);
+        return converter;
+    }
+
+    public MessageConverter cborConverter() {
+        return new MappingJackson2MessageConverter(cborMapper, APPLICATION_CBOR);
+    }
+
+    /**
+     * Marks sessions opened on the native WebSocket endpoint, the only ones that can carry binary frames.
+     */
+    public HandshakeInterceptor nativeTransportMarker() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request,
+                                           ServerHttpResponse response,
+                                           WebSocketHandler wsHandler,
+                                           Map<String, Object> attributes) {
+                attributes.put(NATIVE_TRANSPORT_ATTRIBUTE, true);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request,
+                                       ServerHttpResponse response,
+                                       WebSocketHandler wsHandler,
+                                       Exception exception) {
+            }
+        };
+    }
+
+    /**
+     * Handshake handler that accepts or strips the transport-level permessage-deflate
+     * extension the client offers, depending on configuration.
+     */
+    public HandshakeHandler handshakeHandler() {
+        return new DefaultHandshakeHandler() {
+            @Override
+            protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                         List<WebSocketExtension> requested,
+                                                                         List<WebSocketExtension> supported) {
+                List<WebSocketExtension> accepted = super.filterRequestedExtensions(request, requested, supported);
+                if (permessageDeflate) return accepted;
+                return accepted.stream()
+                        .filter(extension -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+                        .toList();
+            }
+        };
+    }
+
+    public void negotiate(StompHeaderAccessor accessor) {
+        boolean cbor = "cbor".equalsIgnoreCase(accessor.getFirstNativeHeader(FORMAT_HEADER));
+        boolean deflate = "deflate".equalsIgnoreCase(accessor.getFirstNativeHeader(COMPRESSION_HEADER));
+        if (!cbor && !deflate) return;
+
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(NATIVE_TRANSPORT_ATTRIBUTE))) {
+            log.warn("Session {} asked for binary payloads over SockJS, keeping JSON", accessor.getSessionId());
+            return;
+        }
+        if (cbor && brokerMode == BrokerMode.RELAY) {
+            log.warn("Session {} asked for CBOR behind the broker relay, keeping JSON", accessor.getSessionId());
+            cbor = false;
+            if (!deflate) return;
+        }
+        sessions.put(accessor.getSessionId(), new SessionEncoding(cbor, deflate));
+    }
+
+    public void release(String sessionId) {
+        if (sessionId != null) {
+            sessions.remove(sessionId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        release(event.getSessionId());
+    }
+
+    /**
+     * Returns the message re-encoded for its target session, or the message itself when
+     * the session uses plain JSON or the payload is below the compression threshold.
+     */
+    public Message<?> encodeForSession(Message<?> message) {
+        if (sessions.isEmpty()) return message;
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionEncoding encoding = sessionId == null ? null : sessions.get(sessionId);
+        if (encoding == null) return message;
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) return message;
+        if (!(message.getPayload() instanceof byte[] json) || json.length == 0) return message;
+
+        byte[] payload = json;
+        boolean cbor = false;
+        if (encoding.cbor()) {
+            Object source = message.getHeaders().get(SOURCE_HEADER);
+            byte[] encoded = source == null ? null : transcoded.get(source, this::toCbor);
+            if (encoded != null) {
+                payload = encoded;
+                cbor = true;
+            }
+        }
+
+        boolean deflated = false;
+        if (encoding.deflate() && payload.length >= compressionThreshold) {
+            payload = compressed.get(payload, this::deflate);
+            deflated = true;
+        }
+        if (payload == json) return message;
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        // Octet-stream is what makes the STOMP handler send a binary WebSocket frame
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        if (cbor) {
+            accessor.setNativeHeader(FORMAT_HEADER, "cbor");
+        }
+        if (deflated) {
+            accessor.setNativeHeader(CONTENT_ENCODING_HEADER, "deflate");
+        }
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private byte[] toCbor(Object source) {
+        try {
+            return cborMapper.writeValueAsBytes(source);
+        } catch (IOException e) {
+            log.error("Could not encode {} as CBOR: {}", source.getClass().getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Raw deflate (no zlib header), readable with DecompressionStream("deflate-raw").
+     */
+    private byte[] deflate(byte[] input) {
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                output.write(buffer, 0, length);
+            }
+            byte[] result = output.toByteArray();
+
+            compressionInputBytes.increment(input.length);
+            compressionOutputBytes.increment(result.length);
+            compressionRatio.record((double) result.length / input.length);
+            return result;
+        } finally {
+            deflater.end();
+            compressionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
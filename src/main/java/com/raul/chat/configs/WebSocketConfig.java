@@ -1,11 +1,10 @@
 package com.raul.chat.configs;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.raul.chat.exceptions.InvalidTokenException;
 import com.raul.chat.models.user.DeviceType;
-import com.raul.chat.models.user.Status;
-import com.raul.chat.models.user.TokenType;
-import com.raul.chat.services.auth.JwtService;
+import com.raul.chat.services.auth.AuthenticatedPrincipal;
+import com.raul.chat.services.auth.AuthenticatedPrincipalCache;
+import com.raul.chat.services.auth.StompPrincipal;
 import com.raul.chat.services.auth.UserDevicesService;
 import com.raul.chat.services.chat.PresenceService;
 import jakarta.annotation.Nullable;
@@ -13,42 +12,78 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.messaging.converter.DefaultContentTypeResolver;
-import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
-import static org.springframework.util.MimeTypeUtils.APPLICATION_JSON;
-
 @Configuration
 @EnableWebSocketMessageBroker
 @RequiredArgsConstructor
 @Slf4j
-@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
-    JwtService jwtService;
-    PresenceService presenceService;
-    UserDetailsService userDetailsService;
-    UserDevicesService userDevicesService;
+    @Value("${chat.websocket.broker.mode}")
+    BrokerMode brokerMode;
+
+    @Value("${chat.websocket.broker.relay.host}")
+    String relayHost;
+
+    @Value("${chat.websocket.broker.relay.port}")
+    int relayPort;
+
+    @Value("${chat.websocket.broker.relay.login}")
+    String relayLogin;
+
+    @Value("${chat.websocket.broker.relay.passcode}")
+    String relayPasscode;
+
+    @Value("${chat.websocket.broker.relay.virtual-host}")
+    String relayVirtualHost;
+
+    @Value("${chat.websocket.channels.virtual-threads}")
+    boolean virtualThreads;
+
+    @Value("${chat.websocket.channels.core-size}")
+    int channelCoreSize;
+
+    @Value("${chat.websocket.channels.max-size}")
+    int channelMaxSize;
+
+    @Value("${chat.websocket.channels.queue-capacity}")
+    int channelQueueCapacity;
+
+    @Value("${chat.websocket.channels.concurrency-limit}")
+    int channelConcurrencyLimit;
+
+    @Value("${chat.websocket.channels.preserve-order}")
+    boolean preserveOrder;
+
+    final AuthenticatedPrincipalCache authenticatedPrincipalCache;
+    final PresenceService presenceService;
+    final UserDevicesService userDevicesService;
+    final StompFrameTracer stompFrameTracer;
+    final StompPayloadCodec stompPayloadCodec;
 
     @Bean
     public TaskScheduler taskScheduler() {
@@ -63,81 +98,102 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws") // localhost:8080/ws
                 .setAllowedOriginPatterns("*")
+                .setHandshakeHandler(stompPayloadCodec.handshakeHandler())
                 .withSockJS();
+        // Raw WebSocket without SockJS, required for binary (CBOR or deflated) payloads
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*")
+                .setHandshakeHandler(stompPayloadCodec.handshakeHandler())
+                .addInterceptors(stompPayloadCodec.nativeTransportMarker());
+        // Keep each session's frames in the order they arrived, even on a multi-threaded channel
+        registry.setPreserveReceiveOrder(preserveOrder);
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic", "/queue", "/user", "/chat-rooms")
-                .setTaskScheduler(taskScheduler())
-                .setHeartbeatValue(new long[]{5000, 5000});
+        switch (brokerMode) {
+            case SIMPLE -> registry.enableSimpleBroker("/topic", "/queue", "/user", "/chat-rooms")
+                    .setTaskScheduler(taskScheduler())
+                    .setHeartbeatValue(new long[]{5000, 5000});
+            // User destinations and the user registry are broadcast through the broker,
+            // so /user/{id}/... reaches the user's sessions on whichever node holds them
+            case RELAY -> registry.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setVirtualHost(relayVirtualHost)
+                    .setSystemHeartbeatSendInterval(5000)
+                    .setSystemHeartbeatReceiveInterval(5000)
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry")
+                    .setTaskScheduler(taskScheduler());
+        }
         registry.setApplicationDestinationPrefixes("/app");
         registry.setUserDestinationPrefix("/user");
+        registry.setPreservePublishOrder(preserveOrder);
+        configureChannelExecutor(registry.configureBrokerChannel(), "ws-broker-");
     }
 
     @Override
     public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
-        DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
-        resolver.setDefaultMimeType(APPLICATION_JSON);
-        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
-        converter.setObjectMapper(new ObjectMapper());
-        converter.setContentTypeResolver(resolver);
-        messageConverters.add(converter);
+        messageConverters.add(stompPayloadCodec.jsonConverter());
+        messageConverters.add(stompPayloadCodec.cborConverter());
         return false;
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
+        configureChannelExecutor(registration, "ws-inbound-");
         registration.interceptors(new ChannelInterceptor() {
             @Override
             public Message<?> preSend(@Nullable Message<?> message, @Nullable MessageChannel channel) {
-                StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
-                UUID userId = validateToken(accessor);
-                switch (Objects.requireNonNull(accessor.getCommand())) {
-                    case CONNECT:
-                        String conDeviceId = accessor.getFirstNativeHeader("x-device-id");
-                        String deviceToken = accessor.getFirstNativeHeader("x-device-token");
-                        String deviceType = accessor.getFirstNativeHeader("x-device-type");
-
-                        assert conDeviceId != null;
-                        if (!userDevicesService.isDeviceExistForUser(userId, Long.parseLong(conDeviceId))) {
-                            assert deviceType != null;
-                            userDevicesService.saveDevice(
-                                    deviceToken,
-                                    DeviceType.valueOf(deviceType.toUpperCase()),
-                                    userId,
-                                    true
-                            );
-                        } else {
-                            userDevicesService.updateDeviceStatus(Long.parseLong(conDeviceId), true);
-                        }
+                stompFrameTracer.record(StompFrameTracer.Direction.INBOUND, Objects.requireNonNull(message));
+                StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+                // Heartbeats carry no command and need no authentication
+                if (accessor == null || accessor.getCommand() == null) return message;
 
-                        presenceService.updateUserStatus(userId, Status.ONLINE);
-                        log.info("User {} connected", userId);
-                        break;
+                StompCommand command = accessor.getCommand();
+                if (command == StompCommand.CONNECT) {
+                    StompPrincipal principal = authenticate(accessor);
+                    accessor.setUser(principal);
+                    stompPayloadCodec.negotiate(accessor);
+                    registerDevice(accessor, principal.userId());
+                    presenceService.connect(accessor.getSessionId(), principal.userId());
+                    log.info("User {} connected", principal.userId());
+                    return message;
+                }
+
+                StompPrincipal principal = sessionPrincipal(accessor);
+                switch (command) {
                     case DISCONNECT:
+                        stompPayloadCodec.release(accessor.getSessionId());
+                        presenceService.disconnect(accessor.getSessionId());
+                        // Always let a session clean up, even if its token has lapsed
+                        if (principal == null) break;
                         String disDeviceId = accessor.getFirstNativeHeader("disDeviceId");
-                        assert disDeviceId != null;
-                        userDevicesService.updateDeviceStatus(Long.parseLong(disDeviceId), false);
-                        presenceService.updateUserStatus(userId, Status.OFFLINE);
-                        log.info("User {} disconnected", userId);
+                        if (disDeviceId != null) {
+                            userDevicesService.updateDeviceStatus(Long.parseLong(disDeviceId), false);
+                        }
+                        log.info("User {} disconnected", principal.userId());
                         break;
                     case SUBSCRIBE:
-                        log.info("Subscription received: {} with id: {}", accessor.getDestination(),
+                        ensureSessionValid(principal);
+                        log.debug("Subscription received: {} with id: {}", accessor.getDestination(),
                                 accessor.getSubscriptionId());
                         break;
-                    case ERROR:
-                        log.error("Error received: {}",
-                                new String((byte[]) Objects.requireNonNull(message).getPayload()));
-                        break;
                     case SEND:
-                        log.info("Send received");
+                        ensureSessionValid(principal);
+                        break;
+                    case ERROR:
+                        log.error("Error frame received from session {}", accessor.getSessionId());
                         break;
                     default:
-                        log.error("Invalid command: {}", accessor.getCommand());
+                        ensureSessionValid(principal);
                 }
 
-                log.info("Inbound message: {} to {}", accessor.getCommand(), accessor.getDestination());
                 return message;
             }
         });
@@ -145,13 +201,13 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureClientOutboundChannel(ChannelRegistration registration) {
+        configureChannelExecutor(registration, "ws-outbound-");
         registration.interceptors(new ChannelInterceptor() {
             @Override
             public Message<?> preSend(@Nullable Message<?> message, @Nullable MessageChannel channel) {
-                StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
-                log.info("Outgoing: {} to {}  payload: {}", accessor.getCommand(), accessor.getDestination(),
-                        new String((byte[]) Objects.requireNonNull(message).getPayload()));
-                return message;
+                Message<?> encoded = stompPayloadCodec.encodeForSession(Objects.requireNonNull(message));
+                stompFrameTracer.record(StompFrameTracer.Direction.OUTBOUND, encoded);
+                return encoded;
             }
 
             @Override
@@ -161,30 +217,75 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                                             Exception ex) {
                 if (ex != null) {
                     log.error("Outbound error: {}", ex.getMessage());
-                } else if (sent) {
-                    log.info("Outbound sent: {}", message);
-                    log.info("Message sent successfully through outbound channel.");
                 }
             }
         });
     }
 
-    private UUID validateToken(StompHeaderAccessor accessor) {
-        try {
-            String authHeader = accessor.getFirstNativeHeader("Authorization");
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) return null;
-            String jwtToken = authHeader.substring(7);
-            String username = jwtService.extractUsername(jwtToken);
-            UUID userId = jwtService.extractUserId(jwtToken);
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            if (!jwtService.isTokenValid(jwtToken, userDetails, TokenType.ACCESS_TOKEN)) {
-                log.warn("Invalid JWT Token for user: {}", username);
-                throw new InvalidTokenException("Invalid JWT Token provided");
-            }
-            return userId;
-        } catch (Exception e) {
-            log.error("Token validation error: {}", e.getMessage());
-            return null;
+    /**
+     * Inbound handlers block on JPA and Redis, so in virtual-thread mode every message
+     * gets its own virtual thread instead of waiting for a pooled platform thread. The
+     * number of running handlers is still capped, once the cap is reached the reading
+     * thread waits instead of piling up threads that all queue for a connection.
+     */
+    private void configureChannelExecutor(ChannelRegistration registration, String threadNamePrefix) {
+        if (virtualThreads) {
+            AsyncConfig.requireVirtualThreads("chat.websocket.channels.virtual-threads");
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(channelConcurrencyLimit);
+            registration.executor(executor);
+            return;
+        }
+
+        registration.taskExecutor()
+                .corePoolSize(channelCoreSize)
+                .maxPoolSize(channelMaxSize)
+                .queueCapacity(channelQueueCapacity);
+    }
+
+    private StompPrincipal authenticate(StompHeaderAccessor accessor) {
+        String authHeader = accessor.getFirstNativeHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            throw new InvalidTokenException("Missing JWT Token");
+        }
+        String jwtToken = authHeader.substring(7);
+        AuthenticatedPrincipal principal = authenticatedPrincipalCache.authenticate(jwtToken)
+                .orElseThrow(() -> new InvalidTokenException("Invalid JWT Token provided"));
+        return new StompPrincipal(principal.userId(), principal.expiresAt(), principal.epoch(), principal.tokenHash());
+    }
+
+    private void registerDevice(StompHeaderAccessor accessor, UUID userId) {
+        String conDeviceId = accessor.getFirstNativeHeader("x-device-id");
+        String deviceToken = accessor.getFirstNativeHeader("x-device-token");
+        String deviceType = accessor.getFirstNativeHeader("x-device-type");
+
+        if (conDeviceId != null && userDevicesService.isDeviceExistForUser(userId, Long.parseLong(conDeviceId))) {
+            userDevicesService.updateDeviceStatus(Long.parseLong(conDeviceId), true);
+        } else if (deviceType != null) {
+            userDevicesService.saveDevice(
+                    deviceToken,
+                    DeviceType.valueOf(deviceType.toUpperCase()),
+                    userId,
+                    true
+            );
+        }
+    }
+
+    @Nullable
+    private StompPrincipal sessionPrincipal(StompHeaderAccessor accessor) {
+        return accessor.getUser() instanceof StompPrincipal principal ? principal : null;
+    }
+
+    private void ensureSessionValid(@Nullable StompPrincipal principal) {
+        if (principal == null) {
+            throw new InvalidTokenException("STOMP session is not authenticated");
+        }
+        if (!principal.expiresAt().isAfter(Instant.now())) {
+            throw new InvalidTokenException("JWT Token expired, reconnect with a fresh token");
+        }
+        if (authenticatedPrincipalCache.isRevoked(principal)) {
+            throw new InvalidTokenException("JWT Token revoked");
         }
     }
 }
@@ -1,29 +1,82 @@
 package com.raul.chat.controllers;
 
 import com.raul.chat.dtos.chat.NewMessageDto;
+import com.raul.chat.dtos.chat.ReadUpToDto;
 import com.raul.chat.dtos.chat.UpdateMessageStatusDto;
+import com.raul.chat.models.chat.ChatRoomType;
 import com.raul.chat.services.chat.ChatService;
+import com.raul.chat.services.chat.MembershipCache;
+import com.raul.chat.services.chat.RoomDispatcher;
+import com.raul.chat.services.chat.RoomMembers;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Controller;
 
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+
 @Controller
 @RequiredArgsConstructor
+@Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class ChatController {
-
     ChatService chatService;
+    RoomDispatcher roomDispatcher;
+    MembershipCache membershipCache;
+    StompErrorReporter stompErrorReporter;
 
     @MessageMapping("/chat.send")
-    public void sendMessage(@Payload NewMessageDto newMessageDto) {
-        chatService.sendMessage(newMessageDto);
+    public void sendMessage(@Payload NewMessageDto newMessageDto, Principal principal) {
+        // Messages of one conversation are handled in order on that conversation's lane
+        Runnable task = () -> chatService.sendMessage(newMessageDto);
+        Consumer<Exception> onError = e -> reportError(principal, newMessageDto, e);
+        try {
+            Long chatRoomId = newMessageDto.chatRoomId();
+            if (chatRoomId == null) {
+                roomDispatcher.dispatchToPair(newMessageDto.senderId(),
+                        Objects.requireNonNull(newMessageDto.recipientId(), "recipientId is required"), task, onError);
+                return;
+            }
+
+            // A personal room keeps the lane of its pair, the one its first message was sent on
+            RoomMembers room = membershipCache.get(chatRoomId);
+            if (room.type() == ChatRoomType.PERSONAL && room.members().size() == 2) {
+                Iterator<UUID> pair = room.members().keySet().iterator();
+                roomDispatcher.dispatchToPair(pair.next(), pair.next(), task, onError);
+            } else {
+                roomDispatcher.dispatchToRoom(chatRoomId, task, onError);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not dispatch message {} of user {}: {}",
+                    newMessageDto.clientMessageId(), principal.getName(), e.getMessage());
+            onError.accept(e);
+        }
     }
 
     @MessageMapping("/update-status")
-    public void updateStatus(@Payload UpdateMessageStatusDto updateDto) {
-        chatService.updateMessageStatus(updateDto);
+    public void updateStatus(@Payload UpdateMessageStatusDto updateDto, Principal principal) {
+        // Only the session's user can advance their own watermark
+        chatService.updateMessageStatus(UUID.fromString(principal.getName()), updateDto);
+    }
+
+    @MessageMapping("/rooms/{chatRoomId}/read-up-to")
+    public void readUpTo(@DestinationVariable Long chatRoomId, @Payload ReadUpToDto readUpToDto,
+                         Principal principal) {
+        // The reader is always the session's user, never a client-supplied id
+        chatService.markReadUpTo(chatRoomId, UUID.fromString(principal.getName()), readUpToDto);
+    }
+
+    // Sending runs on a room lane after this handler returned, so failures are reported explicitly
+    private void reportError(Principal principal, NewMessageDto newMessageDto, Exception e) {
+        stompErrorReporter.report(principal, Objects.requireNonNullElse(e.getMessage(), "Message could not be sent"),
+                newMessageDto.clientMessageId());
     }
 }
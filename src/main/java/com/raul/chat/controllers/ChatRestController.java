@@ -4,8 +4,9 @@ import com.raul.chat.dtos.auth.MessageResponseDto;
 import com.raul.chat.dtos.auth.UserDto;
 import com.raul.chat.dtos.chat.ChatRoomDto;
 import com.raul.chat.dtos.chat.GroupChatRoleDto;
-import com.raul.chat.dtos.chat.MessageDto;
+import com.raul.chat.dtos.chat.MessagePageDto;
 import com.raul.chat.dtos.chat.NewGroupChatDto;
+import com.raul.chat.dtos.chat.PageDirection;
 import com.raul.chat.models.user.User;
 import com.raul.chat.services.chat.ChatService;
 import jakarta.validation.Valid;
@@ -17,7 +18,6 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -30,13 +30,17 @@ public class ChatRestController {
     ChatService chatService;
 
     @GetMapping("/rooms/{chatRoomId}/messages")
-    public ResponseEntity<List<MessageDto>> getMessages(
+    public ResponseEntity<MessagePageDto> getMessages(
             @PathVariable Long chatRoomId,
+            @RequestParam(name = "cursor", required = false) String cursor,
             @RequestParam(name = "since", required = false) Long lastSeenTimestamp,
+            @RequestParam(name = "limit", defaultValue = "50") Integer limit,
+            @RequestParam(name = "direction", defaultValue = "BEFORE") PageDirection direction,
             @AuthenticationPrincipal User user)
     {
         UUID userId = user.getId();
-        List<MessageDto> response = chatService.getMessagesSince(chatRoomId, lastSeenTimestamp, userId);
+        MessagePageDto response = chatService.getMessagePage(chatRoomId, cursor, lastSeenTimestamp, limit,
+                direction, userId);
         return ResponseEntity.ok(response);
     }
 
@@ -1,15 +1,20 @@
 package com.raul.chat.controllers;
 
-import com.raul.chat.dtos.auth.UserDto;
-import com.raul.chat.services.chat.PresenceService;
+import com.raul.chat.dtos.chat.OnlineUsersPageDto;
+import com.raul.chat.dtos.chat.OnlineUsersRequestDto;
+import com.raul.chat.services.chat.OnlineDirectoryService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
-import java.util.List;
+import java.security.Principal;
+import java.util.UUID;
 
 @Controller
 @RequiredArgsConstructor
@@ -17,11 +22,24 @@ import java.util.List;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class PresenceController {
 
-    PresenceService presenceService;
+    OnlineDirectoryService onlineDirectoryService;
+    StompErrorReporter stompErrorReporter;
 
     @MessageMapping("/online-users")
-    public List<UserDto> getOnlineUsers() {
-        log.info("Getting online users");
-        return presenceService.getOnlineUsers();
+    @SendToUser(destinations = "/queue/online-users", broadcast = false)
+    public OnlineUsersPageDto getOnlineUsers(@Payload(required = false) OnlineUsersRequestDto request,
+                                             Principal principal) {
+        log.info("Getting online contacts of user {}", principal.getName());
+        return onlineDirectoryService.getOnlineContacts(
+                UUID.fromString(principal.getName()),
+                request == null ? null : request.cursor(),
+                request == null ? null : request.size());
+    }
+
+    // A malformed directory cursor is answered on the caller's error queue
+    @MessageExceptionHandler(IllegalArgumentException.class)
+    public void handleInvalidRequest(IllegalArgumentException e, Principal principal) {
+        log.warn("Invalid online-users request of user {}: {}", principal.getName(), e.getMessage());
+        stompErrorReporter.report(principal, e.getMessage(), null);
     }
 }
@@ -0,0 +1,35 @@
+package com.raul.chat.controllers;
+
+import com.raul.chat.exceptions.ErrorResponse;
+import jakarta.annotation.Nullable;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reports failed STOMP requests on the caller's error queue. Controllers that handle
+ * a request after returning, or that reject its payload, report through here.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StompErrorReporter {
+    static final String ERROR_QUEUE = "/queue/errors";
+
+    SimpMessagingTemplate messagingTemplate;
+
+    public void report(Principal principal, String message, @Nullable String clientMessageId) {
+        Map<String, String> errors = new HashMap<>();
+        errors.put("message", message);
+        if (clientMessageId != null) {
+            errors.put("clientMessageId", clientMessageId);
+        }
+        messagingTemplate.convertAndSendToUser(principal.getName(), ERROR_QUEUE, new ErrorResponse(errors));
+    }
+}
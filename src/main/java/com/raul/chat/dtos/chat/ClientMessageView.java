@@ -0,0 +1,10 @@
+package com.raul.chat.dtos.chat;
+
+import java.util.UUID;
+
+public record ClientMessageView(
+        Long messageId,
+        UUID senderId,
+        String clientMessageId
+) {
+}
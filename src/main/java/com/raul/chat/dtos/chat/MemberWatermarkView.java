@@ -0,0 +1,16 @@
+package com.raul.chat.dtos.chat;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+public record MemberWatermarkView(
+        UUID userId,
+        OffsetDateTime joinedAt,
+        Long lastDeliveredMessageId,
+        OffsetDateTime lastDeliveredSentAt,
+        OffsetDateTime lastDeliveredAt,
+        Long lastReadMessageId,
+        OffsetDateTime lastReadSentAt,
+        OffsetDateTime lastReadAt
+) {
+}
@@ -0,0 +1,8 @@
+package com.raul.chat.dtos.chat;
+
+public record MessageAckDto(
+        Long messageId,
+        String clientMessageId,
+        boolean persisted
+) {
+}
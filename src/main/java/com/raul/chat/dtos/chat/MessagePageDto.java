@@ -0,0 +1,10 @@
+package com.raul.chat.dtos.chat;
+
+import java.util.List;
+
+public record MessagePageDto(
+        List<MessageDto> messages,
+        String nextCursor,
+        boolean hasMore
+) {
+}
@@ -0,0 +1,13 @@
+package com.raul.chat.dtos.chat;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+public record MessageView(
+        Long messageId,
+        String content,
+        UUID senderId,
+        Long chatRoomId,
+        OffsetDateTime sentAt
+) {
+}
@@ -8,6 +8,7 @@ public record NewMessageDto(
         String content,
         UUID senderId,
         @Nullable UUID recipientId,
-        @Nullable Long chatRoomId
+        @Nullable Long chatRoomId,
+        @Nullable String clientMessageId
 ) {
 }
@@ -0,0 +1,12 @@
+package com.raul.chat.dtos.chat;
+
+import com.raul.chat.dtos.auth.UserDto;
+
+import java.util.List;
+
+public record OnlineUsersPageDto(
+        List<UserDto> users,
+        String nextCursor,
+        boolean hasMore
+) {
+}
@@ -0,0 +1,7 @@
+package com.raul.chat.dtos.chat;
+
+public record OnlineUsersRequestDto(
+        String cursor,
+        Integer size
+) {
+}
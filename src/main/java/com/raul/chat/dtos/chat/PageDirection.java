@@ -0,0 +1,5 @@
+package com.raul.chat.dtos.chat;
+
+public enum PageDirection {
+    BEFORE, AFTER
+}
@@ -0,0 +1,11 @@
+package com.raul.chat.dtos.chat;
+
+import com.raul.chat.models.user.Status;
+
+import java.util.UUID;
+
+public record PresenceEventDto(
+        UUID userId,
+        Status status
+) {
+}
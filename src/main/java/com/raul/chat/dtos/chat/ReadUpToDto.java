@@ -0,0 +1,10 @@
+package com.raul.chat.dtos.chat;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// The reader is the session's user, a userId still sent by older clients is ignored
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ReadUpToDto(
+        Long upToMessageId
+) {
+}
@@ -1,12 +1,12 @@
 package com.raul.chat.dtos.chat;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.raul.chat.models.chat.MessageStatus;
 
-import java.util.UUID;
-
+// The recipient is the session's user, a recipientId still sent by older clients is ignored
+@JsonIgnoreProperties(ignoreUnknown = true)
 public record UpdateMessageStatusDto(
         Long messageId,
-        UUID recipientId,
         MessageStatus status
 ) {
 }
@@ -9,6 +9,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Column;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.JoinColumn;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.EnumType;
 import lombok.Data;
@@ -33,11 +34,11 @@ public class ChatRoomMembership {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     User user;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "chat_room_id", nullable = false)
     ChatRoom chatRoom;
 
@@ -50,4 +51,23 @@ public class ChatRoomMembership {
     @Column(name = "role")
     @Enumerated(EnumType.STRING)
     MemberRole role;
+
+    @Column(name = "last_delivered_message_id")
+    Long lastDeliveredMessageId;
+
+    // Send time of the watermark message, history is ordered by (sent_at, id) and not by id alone
+    @Column(name = "last_delivered_sent_at")
+    OffsetDateTime lastDeliveredSentAt;
+
+    @Column(name = "last_delivered_at")
+    OffsetDateTime lastDeliveredAt;
+
+    @Column(name = "last_read_message_id")
+    Long lastReadMessageId;
+
+    @Column(name = "last_read_sent_at")
+    OffsetDateTime lastReadSentAt;
+
+    @Column(name = "last_read_at")
+    OffsetDateTime lastReadAt;
 }
@@ -4,13 +4,9 @@ import com.raul.chat.models.user.User;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import jakarta.persistence.Id;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Column;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.JoinColumn;
-import jakarta.persistence.OneToMany;
-import jakarta.persistence.CascadeType;
 import lombok.Data;
 import lombok.Builder;
 import lombok.AllArgsConstructor;
@@ -19,8 +15,6 @@ import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 
 import java.time.OffsetDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
 @Data
 @Builder
@@ -30,8 +24,8 @@ import java.util.List;
 @Entity
 @Table(name = "messages")
 public class Message {
+    // Assigned up front by MessageIdAllocator
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long id;
 
     @Column(name = "content",  nullable = false, columnDefinition = "TEXT")
@@ -41,9 +35,6 @@ public class Message {
     @JoinColumn(name = "sender_id", nullable = false)
     User sender;
 
-    @OneToMany(mappedBy = "message", cascade = CascadeType.ALL, orphanRemoval = true)
-    private List<MessageRecipient> recipients = new ArrayList<>();
-
     @ManyToOne
     @JoinColumn(name = "chat_room_id")
     ChatRoom chatRoom;
@@ -53,4 +44,8 @@ public class Message {
 
     @Column(name = "updated_at")
     OffsetDateTime updatedAt;
+
+    // Set by the sending client, unique per sender so resends are stored only once
+    @Column(name = "client_message_id", updatable = false)
+    String clientMessageId;
 }
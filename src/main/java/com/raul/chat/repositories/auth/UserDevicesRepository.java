@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -19,6 +20,12 @@ public interface UserDevicesRepository extends JpaRepository<UserDevices, Long>
             nativeQuery = true)
     List<String> findDeviceTokenByUserId(@Param("userId") UUID userId);
 
+    @Query(value = "SELECT ud.device_token FROM user_devices ud " +
+                   "WHERE ud.user_id IN (:userIds) " +
+                   "AND ud.is_online = FALSE",
+            nativeQuery = true)
+    List<String> findDeviceTokensByUserIds(@Param("userIds") Collection<UUID> userIds);
+
     @Query(value = "SELECT EXISTS " +
                    "(SELECT 1 FROM user_devices ud WHERE ud.user_id = :userId AND ud.id = :deviceId)",
             nativeQuery = true)
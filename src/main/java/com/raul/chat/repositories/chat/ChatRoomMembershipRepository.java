@@ -1,11 +1,15 @@
 package com.raul.chat.repositories.chat;
 
+import com.raul.chat.dtos.chat.MemberWatermarkView;
+import com.raul.chat.dtos.chat.MembershipDto;
 import com.raul.chat.models.chat.ChatRoomMembership;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -16,9 +20,65 @@ public interface ChatRoomMembershipRepository extends JpaRepository<ChatRoomMemb
     @Query(value = "SELECT * FROM chat_room_memberships crm WHERE chat_room_id = :chatRoomId", nativeQuery = true)
     List<ChatRoomMembership> findByChatRoomId(@Param("chatRoomId") Long chatRoomId);
 
+    @Query("SELECT new com.raul.chat.dtos.chat.MembershipDto(m.user.id, m.chatRoom.id, m.role) " +
+           "FROM ChatRoomMembership m " +
+           "WHERE m.chatRoom.id = :chatRoomId")
+    List<MembershipDto> findMembershipDtosByChatRoomId(@Param("chatRoomId") Long chatRoomId);
+
     @Query(value = "SELECT * FROM chat_room_memberships crm " +
                    "WHERE crm.user_id = :userId " +
                    "AND crm.chat_room_id = :chatRoomId", nativeQuery = true)
     Optional<ChatRoomMembership> findByUserIdAndChatId(@Param("userId") UUID userId,
                                                        @Param("chatRoomId") Long chatRoomId);
+
+    @Query(value = "SELECT DISTINCT other.user_id FROM chat_room_memberships own " +
+                   "JOIN chat_room_memberships other ON other.chat_room_id = own.chat_room_id " +
+                   "WHERE own.user_id = :userId " +
+                   "AND other.user_id <> :userId", nativeQuery = true)
+    List<UUID> findContactIdsByUserId(@Param("userId") UUID userId);
+
+    @Query("SELECT new com.raul.chat.dtos.chat.MemberWatermarkView(" +
+           "m.user.id, m.joinedAt, m.lastDeliveredMessageId, m.lastDeliveredSentAt, m.lastDeliveredAt, " +
+           "m.lastReadMessageId, m.lastReadSentAt, m.lastReadAt) " +
+           "FROM ChatRoomMembership m " +
+           "WHERE m.chatRoom.id = :chatRoomId")
+    List<MemberWatermarkView> findWatermarksByChatRoomId(@Param("chatRoomId") Long chatRoomId);
+
+    // Watermarks follow the history order (sent_at, id), ids alone are not monotonic in send time.
+    // Every CASE reads the pre-update row, so the three columns move together or not at all.
+    @Modifying
+    @Query(value = "UPDATE chat_room_memberships SET " +
+                   "last_delivered_at = CASE WHEN (last_delivered_sent_at IS NULL OR (last_delivered_sent_at, last_delivered_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :now ELSE last_delivered_at END, " +
+                   "last_delivered_sent_at = CASE WHEN (last_delivered_sent_at IS NULL OR (last_delivered_sent_at, last_delivered_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :sentAt ELSE last_delivered_sent_at END, " +
+                   "last_delivered_message_id = CASE WHEN (last_delivered_sent_at IS NULL OR (last_delivered_sent_at, last_delivered_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :messageId ELSE last_delivered_message_id END " +
+                   "WHERE chat_room_id = :chatRoomId AND user_id = :userId", nativeQuery = true)
+    int advanceDeliveredWatermark(@Param("chatRoomId") Long chatRoomId,
+                                  @Param("userId") UUID userId,
+                                  @Param("messageId") Long messageId,
+                                  @Param("sentAt") OffsetDateTime sentAt,
+                                  @Param("now") OffsetDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE chat_room_memberships SET " +
+                   "last_delivered_at = CASE WHEN (last_delivered_sent_at IS NULL OR (last_delivered_sent_at, last_delivered_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :now ELSE last_delivered_at END, " +
+                   "last_delivered_sent_at = CASE WHEN (last_delivered_sent_at IS NULL OR (last_delivered_sent_at, last_delivered_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :sentAt ELSE last_delivered_sent_at END, " +
+                   "last_delivered_message_id = CASE WHEN (last_delivered_sent_at IS NULL OR (last_delivered_sent_at, last_delivered_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :messageId ELSE last_delivered_message_id END, " +
+                   "last_read_at = CASE WHEN (last_read_sent_at IS NULL OR (last_read_sent_at, last_read_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :now ELSE last_read_at END, " +
+                   "last_read_sent_at = CASE WHEN (last_read_sent_at IS NULL OR (last_read_sent_at, last_read_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :sentAt ELSE last_read_sent_at END, " +
+                   "last_read_message_id = CASE WHEN (last_read_sent_at IS NULL OR (last_read_sent_at, last_read_message_id) < (:sentAt, :messageId)) " +
+                   "THEN :messageId ELSE last_read_message_id END " +
+                   "WHERE chat_room_id = :chatRoomId AND user_id = :userId", nativeQuery = true)
+    int advanceReadWatermark(@Param("chatRoomId") Long chatRoomId,
+                             @Param("userId") UUID userId,
+                             @Param("messageId") Long messageId,
+                             @Param("sentAt") OffsetDateTime sentAt,
+                             @Param("now") OffsetDateTime now);
 }
@@ -1,6 +1,7 @@
 package com.raul.chat.repositories.chat;
 
 import com.raul.chat.models.chat.ChatRoom;
+import com.raul.chat.models.chat.ChatRoomType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -18,4 +19,7 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
                    "WHERE cr.type = 'PERSONAL' " +
                    "AND m1.user_id = :senderId AND m2.user_id = :recipientId", nativeQuery = true)
     Optional<ChatRoom> findPersonalChatRoom(@Param("senderId") UUID senderId, @Param("recipientId") UUID recipientId);
+
+    @Query("SELECT cr.type FROM ChatRoom cr WHERE cr.id = :chatRoomId")
+    Optional<ChatRoomType> findTypeById(@Param("chatRoomId") Long chatRoomId);
 }
@@ -1,23 +1,60 @@
 package com.raul.chat.repositories.chat;
 
+import com.raul.chat.dtos.chat.ClientMessageView;
+import com.raul.chat.dtos.chat.MessageView;
 import com.raul.chat.models.chat.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-    @Query(
-            value = "SELECT * FROM messages m " +
-                    "WHERE m.chat_room_id = :chatRoomId " +
-                    "AND m.sent_at > :since " +
-                    "ORDER BY m.sent_at",
-            nativeQuery = true
-    )
-    List<Message> findByChatRoomIdAndCreatedAtAfter(@Param("chatRoomId") Long chatRoomId, @Param("since") Instant since);
+    @Transactional
+    @Query(value = "SELECT nextval('messages_id_seq')", nativeQuery = true)
+    long nextIdBlock();
+
+    @Query("SELECT new com.raul.chat.dtos.chat.ClientMessageView(m.id, m.sender.id, m.clientMessageId) " +
+           "FROM Message m " +
+           "WHERE m.clientMessageId IN :clientMessageIds")
+    List<ClientMessageView> findByClientMessageIds(@Param("clientMessageIds") Collection<String> clientMessageIds);
+
+    @Query("SELECT new com.raul.chat.dtos.chat.MessageView(m.id, m.content, m.sender.id, m.chatRoom.id, m.sentAt) " +
+           "FROM Message m " +
+           "WHERE m.id = :messageId")
+    Optional<MessageView> findViewById(@Param("messageId") Long messageId);
+
+    @Query("SELECT new com.raul.chat.dtos.chat.MessageView(m.id, m.content, m.sender.id, m.chatRoom.id, m.sentAt) " +
+           "FROM Message m " +
+           "WHERE m.chatRoom.id = :chatRoomId " +
+           "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageView> findLatestPage(@Param("chatRoomId") Long chatRoomId, Limit limit);
+
+    @Query("SELECT new com.raul.chat.dtos.chat.MessageView(m.id, m.content, m.sender.id, m.chatRoom.id, m.sentAt) " +
+           "FROM Message m " +
+           "WHERE m.chatRoom.id = :chatRoomId " +
+           "AND (m.sentAt, m.id) < (:sentAt, :messageId) " +
+           "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageView> findPageBefore(@Param("chatRoomId") Long chatRoomId,
+                                     @Param("sentAt") OffsetDateTime sentAt,
+                                     @Param("messageId") Long messageId,
+                                     Limit limit);
+
+    @Query("SELECT new com.raul.chat.dtos.chat.MessageView(m.id, m.content, m.sender.id, m.chatRoom.id, m.sentAt) " +
+           "FROM Message m " +
+           "WHERE m.chatRoom.id = :chatRoomId " +
+           "AND (m.sentAt, m.id) > (:sentAt, :messageId) " +
+           "ORDER BY m.sentAt, m.id")
+    List<MessageView> findPageAfter(@Param("chatRoomId") Long chatRoomId,
+                                    @Param("sentAt") OffsetDateTime sentAt,
+                                    @Param("messageId") Long messageId,
+                                    Limit limit);
 }
@@ -15,13 +15,14 @@ import com.raul.chat.models.user.Status;
 import com.raul.chat.models.user.TokenType;
 import com.raul.chat.models.user.User;
 import com.raul.chat.repositories.auth.UserRepository;
+import com.raul.chat.services.chat.OnlineDirectoryService;
+import com.raul.chat.services.utils.TransactionUtils;
 import com.raul.chat.services.utils.UserUtils;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -50,7 +51,7 @@ public class AuthService {
     final EmailSenderService emailSenderService;
     final TokenService tokenService;
     final OtpService otpService;
-    final SimpMessagingTemplate messagingTemplate;
+    final OnlineDirectoryService onlineDirectoryService;
     final UserUtils userUtils;
 
     @Transactional
@@ -101,7 +102,8 @@ public class AuthService {
 
         UserDto userDto = userUtils.convertToUserDto(user);
 
-        messagingTemplate.convertAndSend("/topic/online-users", userDto);
+        UUID userId = user.getId();
+        TransactionUtils.afterCommit(() -> onlineDirectoryService.publishStatus(userId, Status.ONLINE));
 
         log.info("User with Email: {} successfully login", userDto.email());
         return new LoginResponseDto(accessToken, refreshToken);
@@ -185,8 +187,9 @@ public class AuthService {
         log.info("Refreshing token");
 
         String token = request.refreshToken();
-        String email = jwtService.extractUsername(token);
-        if (email == null || jwtService.isTokenExpired(token)) {
+        VerifiedToken verified = jwtService.verify(token);
+        String email = verified.username();
+        if (email == null || verified.isExpired()) {
             log.error("Invalid refresh token provided");
             throw new IllegalArgumentException("Refresh token is invalid or expired");
         }
@@ -194,6 +197,12 @@ public class AuthService {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> userUtils.throwUserNotFoundException("email", email));
 
+        // A refresh token replaced by a later login or revoked on logout is rejected
+        if (!jwtService.isRefreshTokenValid(token, verified, user)) {
+            log.error("Revoked refresh token provided for user with Email: {}", email);
+            throw new IllegalArgumentException("Refresh token is invalid or expired");
+        }
+
         String newAccessToken = jwtService.generateToken(user);
 
         log.info("Token refreshed successfully for user with Email: {}", user.getEmail());
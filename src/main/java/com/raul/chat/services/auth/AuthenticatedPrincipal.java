@@ -0,0 +1,16 @@
+package com.raul.chat.services.auth;
+
+import jakarta.annotation.Nullable;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record AuthenticatedPrincipal(
+        UUID userId,
+        UserDetails userDetails,
+        Instant expiresAt,
+        @Nullable Long epoch,
+        String tokenHash
+) {
+}
@@ -0,0 +1,151 @@
+package com.raul.chat.services.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.raul.chat.models.user.TokenType;
+import com.raul.chat.services.redis.JwtTokenTrackService;
+import com.raul.chat.services.redis.TokenRevocation;
+import com.raul.chat.services.utils.TokenUtils;
+import io.jsonwebtoken.JwtException;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Bounded, TTL-based cache of access tokens that have already been verified, keyed by
+ * the token's SHA-256 hash. A hit needs no JWT parsing, database query or Redis call.
+ * Access token revocations are kept per user as the lowest epoch still valid, plus any
+ * single revoked token hashes, so long-lived STOMP sessions can be checked per token.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AuthenticatedPrincipalCache implements MessageListener {
+
+    JwtService jwtService;
+    UserDetailsService userDetailsService;
+    RedisTemplate<String, Object> redisTemplate;
+    RedisMessageListenerContainer listenerContainer;
+    Cache<String, AuthenticatedPrincipal> principals;
+    Cache<UUID, Long> revokedEpochs;
+    Cache<String, Boolean> revokedTokens;
+
+    public AuthenticatedPrincipalCache(JwtService jwtService,
+                                       UserDetailsService userDetailsService,
+                                       RedisTemplate<String, Object> redisTemplate,
+                                       RedisMessageListenerContainer listenerContainer,
+                                       @Value("${jwt.principal-cache.max-size}") long maxSize,
+                                       @Value("${jwt.principal-cache.ttl-seconds}") long ttlSeconds,
+                                       @Value("${jwt.expiration}") long accessTokenExpirationMs) {
+        this.jwtService = jwtService;
+        this.userDetailsService = userDetailsService;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        // A revocation only matters while tokens issued before it can still be valid
+        this.revokedEpochs = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(accessTokenExpirationMs))
+                .build();
+        this.revokedTokens = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(accessTokenExpirationMs))
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(JwtTokenTrackService.REVOCATION_CHANNEL));
+    }
+
+    public Optional<AuthenticatedPrincipal> authenticate(String token) {
+        String key = TokenUtils.sha256Hex(token);
+
+        AuthenticatedPrincipal cached = principals.getIfPresent(key);
+        if (cached != null) {
+            if (cached.expiresAt().isAfter(Instant.now())) {
+                return Optional.of(cached);
+            }
+            principals.invalidate(key);
+        }
+
+        try {
+            VerifiedToken verified = jwtService.verify(token);
+            UserDetails userDetails = userDetailsService.loadUserByUsername(verified.username());
+            if (!jwtService.isTokenValid(token, verified, userDetails, TokenType.ACCESS_TOKEN)) {
+                log.debug("Invalid JWT Token for user: {}", verified.username());
+                return Optional.empty();
+            }
+
+            AuthenticatedPrincipal principal = new AuthenticatedPrincipal(
+                    verified.userId(),
+                    userDetails,
+                    verified.expiresAt(),
+                    verified.epoch(),
+                    key
+            );
+            principals.put(key, principal);
+            return Optional.of(principal);
+        } catch (JwtException | UsernameNotFoundException | IllegalArgumentException e) {
+            log.debug("Token authentication failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void revoke(TokenRevocation revocation) {
+        // Only access tokens are cached or bound to sessions
+        if (revocation.tokenType() != TokenType.ACCESS_TOKEN) return;
+
+        if (revocation.tokenHash() != null) {
+            revokedTokens.put(revocation.tokenHash(), Boolean.TRUE);
+        }
+        if (revocation.epoch() != null) {
+            // Revocations may arrive out of order, the highest epoch wins
+            revokedEpochs.asMap().merge(revocation.userId(), revocation.epoch(), Math::max);
+        }
+        principals.asMap().values().removeIf(principal -> principal.userId().equals(revocation.userId())
+                && revocation.covers(principal.epoch(), principal.tokenHash()));
+    }
+
+    /**
+     * Whether the token a session was opened with has been revoked since. A login issues its
+     * token with the epoch it just published, so its own revocation never covers it.
+     */
+    public boolean isRevoked(StompPrincipal principal) {
+        if (revokedTokens.getIfPresent(principal.tokenHash()) != null) return true;
+
+        Long revokedEpoch = revokedEpochs.getIfPresent(principal.userId());
+        return revokedEpoch != null && (principal.epoch() == null || principal.epoch() < revokedEpoch);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object payload = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (payload == null) return;
+
+        try {
+            TokenRevocation revocation = TokenRevocation.decode(payload.toString());
+            revoke(revocation);
+            log.debug("{} revocation applied for user {}", revocation.tokenType(), revocation.userId());
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid token revocation message: {}", payload);
+        }
+    }
+}
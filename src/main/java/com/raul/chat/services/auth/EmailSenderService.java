@@ -1,5 +1,6 @@
 package com.raul.chat.services.auth;
 
+import com.raul.chat.configs.AsyncConfig;
 import com.raul.chat.models.mail.EmailNotificationSubject;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
@@ -13,7 +14,6 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -23,7 +23,6 @@ import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
-@EnableAsync
 @Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class EmailSenderService {
@@ -33,7 +32,7 @@ public class EmailSenderService {
     @Value("${spring.mail.username}")
     String from;
 
-    @Async
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
     public void sendEmail(@NotNull String toEmail,
                           @NotNull EmailNotificationSubject subject,
                           @NotNull Map<String, String> placeholders) {
@@ -3,10 +3,13 @@ package com.raul.chat.services.auth;
 import com.raul.chat.models.user.TokenType;
 import com.raul.chat.models.user.User;
 import com.raul.chat.services.redis.JwtTokenTrackService;
+import com.raul.chat.services.redis.TokenEpochCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -21,7 +24,6 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.UUID;
 import java.util.Date;
-import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -38,7 +40,25 @@ public class JwtService {
     @Value("${jwt.secret}")
     String secretKey;
 
+    @Value("${jwt.validation.mode}")
+    TokenValidationMode validationMode;
+
+    static final String EPOCH_CLAIM = "epoch";
+
     final JwtTokenTrackService jwtTokenTrackService;
+    final TokenEpochCache tokenEpochCache;
+
+    SecretKey signInKey;
+    JwtParser jwtParser;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
+        signInKey = Keys.hmacShaKeyFor(keyBytes);
+        jwtParser = Jwts.parser()
+                .verifyWith(signInKey)
+                .build();
+    }
 
     public String generateToken(User user) {
         return generateToken(new HashMap<>(), user);
@@ -65,7 +85,9 @@ public class JwtService {
                               UserDetails userDetails) {
         UUID userId = (UUID) extraClaims.get("userId");
 
-        revokeAllUserTokens(userId, TokenType.ACCESS_TOKEN);
+        // The epoch is stamped in every mode, live STOMP sessions are revoked by comparing it
+        long epoch = jwtTokenTrackService.revokeAllTokens(userId, TokenType.ACCESS_TOKEN);
+        extraClaims.put(EPOCH_CLAIM, epoch);
 
         Date expirationDateTime = new Date(System.currentTimeMillis() + jwtExpiration);
 
@@ -77,39 +99,42 @@ public class JwtService {
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(expirationDateTime)
                 .and()
-                .signWith(getSignInKey(), Jwts.SIG.HS256)
+                .signWith(signInKey, Jwts.SIG.HS256)
                 .compact();
 
-        saveToken(userId, token, TokenType.ACCESS_TOKEN);
+        saveToken(userId, token, TokenType.ACCESS_TOKEN, epoch);
 
         return token;
     }
 
     public String generateRefreshToken(User user) {
 
-        revokeAllUserTokens(user.getId(), TokenType.REFRESH_TOKEN);
+        long epoch = jwtTokenTrackService.revokeAllTokens(user.getId(), TokenType.REFRESH_TOKEN);
 
         Date expirationDateTime = new Date(System.currentTimeMillis() + refreshJwtExpiration);
 
-        String refreshToken = Jwts.builder()
+        var builder = Jwts.builder();
+        if (validationMode == TokenValidationMode.EPOCH) {
+            builder.claim(EPOCH_CLAIM, epoch);
+        }
+
+        String refreshToken = builder
                 .subject(user.getEmail())
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(expirationDateTime)
-                .signWith(getSignInKey())
+                .signWith(signInKey)
                 .compact();
 
-        saveToken(user.getId(), refreshToken, TokenType.REFRESH_TOKEN);
+        saveToken(user.getId(), refreshToken, TokenType.REFRESH_TOKEN, epoch);
 
         return refreshToken;
     }
 
-    private SecretKey getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
-    }
-
-    private void saveToken(UUID userId, String token, TokenType tokenType) {
-        jwtTokenTrackService.saveToken(userId, token, tokenType);
+    private void saveToken(UUID userId, String token, TokenType tokenType, long epoch) {
+        // Epoch tokens are self-describing, nothing to index
+        if (validationMode == TokenValidationMode.TRACKED) {
+            jwtTokenTrackService.saveToken(userId, token, tokenType, epoch);
+        }
     }
 
     public void revokeAllUserTokens(UUID userId, TokenType tokenType) {
@@ -117,43 +142,72 @@ public class JwtService {
     }
 
     public Boolean isTokenValid(String token, UserDetails userDetails, TokenType tokenType) {
-        String username = extractUsername(token);
+        return isTokenValid(token, verify(token), userDetails, tokenType);
+    }
+
+    /**
+     * Checks an already verified token against the user and the revocation state,
+     * without parsing it again.
+     */
+    public Boolean isTokenValid(String token, VerifiedToken verified, UserDetails userDetails, TokenType tokenType) {
+        String username = verified.username();
 
         if (username == null || !username.equals(userDetails.getUsername())) {
             log.debug("Invalid token: username mismatch");
             return false;
         }
 
-        UUID userId = extractUserId(token);
+        UUID userId = verified.userId();
+        if (userId == null) {
+            log.debug("Invalid token: missing userId claim");
+            return false;
+        }
+        if (validationMode == TokenValidationMode.EPOCH) {
+            Long tokenEpoch = verified.epoch();
+            return tokenEpoch != null && tokenEpoch == tokenEpochCache.currentEpoch(userId, tokenType);
+        }
         return jwtTokenTrackService.isTokenValid(token, userId, tokenType);
     }
 
-    public Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    /**
+     * Refresh tokens carry no userId claim, which keeps them from passing as access tokens,
+     * so the id is taken from the user their subject resolved to.
+     */
+    public Boolean isRefreshTokenValid(String token, VerifiedToken verified, User user) {
+        VerifiedToken withUserId = new VerifiedToken(verified.username(), user.getId(),
+                verified.expiresAt(), verified.epoch());
+        return isTokenValid(token, withUserId, user, TokenType.REFRESH_TOKEN);
     }
 
-    public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+    /**
+     * Parses the token and verifies its signature and expiry once, so callers can read
+     * every claim they need from the result.
+     */
+    public VerifiedToken verify(String token) {
+        Claims claims = jwtParser.parseSignedClaims(token).getPayload();
+        String userId = claims.get("userId", String.class);
+
+        return new VerifiedToken(
+                claims.getSubject(),
+                userId == null ? null : UUID.fromString(userId),
+                claims.getExpiration().toInstant(),
+                claims.get(EPOCH_CLAIM, Long.class)
+        );
     }
 
-    private <T> T extractClaim(String token, Function<Claims, T> claimResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimResolver.apply(claims);
+    public Boolean isTokenExpired(String token) {
+        return verify(token).isExpired();
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSignInKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    public String extractUsername(String token) {
+        return verify(token).username();
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    public Date extractExpiration(String token) {
+        return Date.from(verify(token).expiresAt());
     }
 
     public UUID extractUserId(String token) {
-        return extractClaim(token, claims -> UUID.fromString(claims.get("userId", String.class)));
+        return verify(token).userId();
     }
 }
@@ -2,6 +2,7 @@ package com.raul.chat.services.auth;
 
 import com.raul.chat.models.user.Status;
 import com.raul.chat.models.user.TokenType;
+import com.raul.chat.services.chat.OnlineDirectoryService;
 import com.raul.chat.services.chat.PresenceService;
 import com.raul.chat.services.redis.JwtTokenTrackService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,7 +10,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.authentication.logout.LogoutHandler;
 import org.springframework.stereotype.Service;
@@ -21,9 +21,9 @@ import java.util.UUID;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class LogoutService implements LogoutHandler {
 
-    SimpMessagingTemplate simpMessagingTemplate;
     JwtService jwtService;
     PresenceService presenceService;
+    OnlineDirectoryService onlineDirectoryService;
     JwtTokenTrackService jwtTokenTrackService;
 
     @Override
@@ -44,6 +44,6 @@ public class LogoutService implements LogoutHandler {
         jwtTokenTrackService.revokeAllTokens(userId, TokenType.ACCESS_TOKEN);
 
         presenceService.updateUserStatus(userId, Status.OFFLINE);
-        simpMessagingTemplate.convertAndSend("/topic/online-users", userId);
+        onlineDirectoryService.publishStatus(userId, Status.OFFLINE);
     }
 }
@@ -0,0 +1,25 @@
+package com.raul.chat.services.auth;
+
+import jakarta.annotation.Nullable;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Principal bound to a STOMP session at CONNECT. The name is the user id so that
+ * {@code /user/{userId}/...} destinations resolve to the user's sessions. The token's
+ * epoch and hash identify exactly which revocations end the session.
+ */
+public record StompPrincipal(
+        UUID userId,
+        Instant expiresAt,
+        @Nullable Long epoch,
+        String tokenHash
+) implements Principal {
+
+    @Override
+    public String getName() {
+        return userId.toString();
+    }
+}
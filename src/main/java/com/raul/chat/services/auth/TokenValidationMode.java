@@ -0,0 +1,8 @@
+package com.raul.chat.services.auth;
+
+public enum TokenValidationMode {
+    /** Every issued token is indexed in Redis and looked up on validation. */
+    TRACKED,
+    /** Tokens carry the user's epoch and are valid while it is still the current one. */
+    EPOCH,
+}
@@ -1,5 +1,6 @@
 package com.raul.chat.services.auth;
 
+import com.raul.chat.configs.AsyncConfig;
 import com.raul.chat.models.user.DeviceType;
 import com.raul.chat.models.user.User;
 import com.raul.chat.models.user.UserDevices;
@@ -15,6 +16,7 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -28,7 +30,7 @@ public class UserDevicesService {
     UserRepository userRepository;
     UserUtils userUtils;
 
-    @Async
+    @Async(AsyncConfig.BACKGROUND_EXECUTOR)
     public void saveDevice(String deviceToken, DeviceType deviceType, UUID userId, boolean isOnline) {
         log.debug("Saving device {} {} for user {}", deviceToken, deviceType, userId);
 
@@ -50,6 +52,10 @@ public class UserDevicesService {
         return userDevicesRepository.findDeviceTokenByUserId(userId);
     }
 
+    public List<String> getOfflineDeviceTokensByUserIds(Collection<UUID> userIds) {
+        return userDevicesRepository.findDeviceTokensByUserIds(userIds);
+    }
+
     public boolean isDeviceExistForUser(UUID userId, Long deviceId) {
         return userDevicesRepository.findByDeviceTokenAndUserId(userId, deviceId);
     }
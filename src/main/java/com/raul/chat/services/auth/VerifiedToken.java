@@ -0,0 +1,22 @@
+package com.raul.chat.services.auth;
+
+import jakarta.annotation.Nullable;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Claims of a token whose signature and expiry have already been checked.
+ * {@code userId} is only present on access tokens, {@code epoch} is missing only on
+ * tokens issued before every token was stamped with one.
+ */
+public record VerifiedToken(
+        String username,
+        @Nullable UUID userId,
+        Instant expiresAt,
+        @Nullable Long epoch
+) {
+    public boolean isExpired() {
+        return !expiresAt.isAfter(Instant.now());
+    }
+}
@@ -3,15 +3,19 @@ package com.raul.chat.services.chat;
 import com.raul.chat.dtos.auth.MessageResponseDto;
 import com.raul.chat.dtos.auth.UserDto;
 import com.raul.chat.dtos.chat.RecipientDto;
+import com.raul.chat.dtos.chat.MemberWatermarkView;
 import com.raul.chat.dtos.chat.MessageDto;
+import com.raul.chat.dtos.chat.MessagePageDto;
+import com.raul.chat.dtos.chat.MessageView;
+import com.raul.chat.dtos.chat.PageDirection;
+import com.raul.chat.dtos.chat.ReadUpToDto;
+import com.raul.chat.dtos.chat.ReceiptEventDto;
 import com.raul.chat.dtos.chat.NewGroupChatDto;
 import com.raul.chat.dtos.chat.NewMessageDto;
 import com.raul.chat.dtos.chat.UpdateMessageStatusDto;
 import com.raul.chat.dtos.chat.ChatRoomDto;
 import com.raul.chat.dtos.chat.GroupChatRoleDto;
-import com.raul.chat.models.chat.MessageRecipient;
 import com.raul.chat.models.chat.ChatRoom;
-import com.raul.chat.models.chat.Message;
 import com.raul.chat.models.chat.MessageStatus;
 import com.raul.chat.models.chat.ChatRoomType;
 import com.raul.chat.models.chat.MemberRole;
@@ -22,19 +26,24 @@ import com.raul.chat.repositories.chat.ChatRoomRepository;
 import com.raul.chat.repositories.chat.MessageRepository;
 import com.raul.chat.repositories.auth.UserRepository;
 import com.raul.chat.services.redis.DeliveryTrackerService;
+import com.raul.chat.services.utils.TransactionUtils;
 import com.raul.chat.services.utils.UserUtils;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -47,6 +56,7 @@ public class ChatService {
     static final String GROUP_CHAT_TOPIC = "/topic/chat-room.{id}";
     static final String PERSONAL_CHAT_TOPIC = "/user/{id}/queue/messages";
     static final String SYSTEM_USER_EMAIL = "system@chat";
+    static final int MAX_PAGE_SIZE = 200;
 
     final UserRepository userRepository;
     final MessageRepository messageRepository;
@@ -54,8 +64,12 @@ public class ChatService {
     final ChatRoomMembershipRepository chatRoomMembershipRepository;
     final MessageMapper  messageMapper;
     final MembershipMapper membershipMapper;
-    final SimpMessagingTemplate messagingTemplate;
+    final EncodedMessageSender encodedMessageSender;
     final NotificationService notificationService;
+    final MessageWriteBehindService messageWriteBehindService;
+    final MessageIdAllocator messageIdAllocator;
+    final ReceiptPublisher receiptPublisher;
+    final MembershipCache membershipCache;
     final DeliveryTrackerService deliveryTrackerService;
     final UserUtils userUtils;
 
@@ -78,57 +92,86 @@ public class ChatService {
                     return new EntityNotFoundException("Sender not found: " + newMessageDto.senderId());
                 });
 
-        // Find or create chat room
-        ChatRoom chatRoom;
-        User recipient = null;
-        UUID recipientId =  newMessageDto.recipientId();
+        // Personal chats without a room yet are created on the first message
         if (newMessageDto.chatRoomId() == null) {
+            UUID recipientId = newMessageDto.recipientId();
             assert recipientId != null;
-            recipient = userRepository.findById(recipientId)
+            User recipient = userRepository.findById(recipientId)
                 .orElseThrow(() -> userUtils.throwUserNotFoundException("ID", recipientId.toString()));
 
-            chatRoom = findOrCreatePersonalChatRoom(sender, recipient);
-        } else {
-            chatRoom = chatRoomRepository.findById(newMessageDto.chatRoomId())
-                .orElseThrow(() -> {
-                    log.warn("No chat room found with id {}", newMessageDto.chatRoomId());
-                    return new EntityNotFoundException("ChatRoom not found: " + newMessageDto.chatRoomId());
-                });
+            ChatRoom chatRoom = findOrCreatePersonalChatRoom(sender, recipient);
+            processSendMessage(sender, chatRoom.getId(), ChatRoomType.PERSONAL, newMessageDto.content(),
+                    List.of(recipientId), true, newMessageDto.clientMessageId());
+            return;
         }
 
-        // Determine recipients
-        List<User> recipients;
-        if (chatRoom.getType() == ChatRoomType.PERSONAL) {
-            if (recipient == null) {
-                assert recipientId != null;
-                recipient = userRepository.findById(recipientId)
-                        .orElseThrow(() -> userUtils.throwUserNotFoundException("ID", recipientId.toString()));
-            }
-            recipients = List.of(recipient);
-        } else {
-            recipients = chatRoomMembershipRepository.findByChatRoomId(chatRoom.getId()).stream()
-                    .map(ChatRoomMembership::getUser)
-                    .filter(user -> !user.getId().equals(sender.getId()))
-                    .toList();
+        // Determine recipients from the cached room members
+        RoomMembers room = membershipCache.get(newMessageDto.chatRoomId());
+        if (!room.isMember(sender.getId())) {
+            log.warn("Sender {} is not a member of chat room {}", sender.getId(), newMessageDto.chatRoomId());
+            throw new IllegalArgumentException("You are not a member of this chat");
         }
 
-        processSendMessage(sender, chatRoom, newMessageDto.content(), chatRoom.getType(), recipients, true);
+        processSendMessage(sender, newMessageDto.chatRoomId(), room.type(), newMessageDto.content(),
+                room.recipientsExcept(sender.getId()), true, newMessageDto.clientMessageId());
     }
 
-    public List<MessageDto> getMessagesSince(Long chatRoomId, Long lastSeenTimestamp, UUID userId) {
-        log.info("Getting unread messages from the chat room {}", chatRoomId);
+    @Transactional(readOnly = true)
+    public MessagePageDto getMessagePage(Long chatRoomId, String cursor, Long lastSeenTimestamp,
+                                         int limit, PageDirection direction, UUID userId) {
+        log.info("Getting messages page from the chat room {}", chatRoomId);
+
+        if (!membershipCache.get(chatRoomId).isMember(userId)) {
+            throw new IllegalArgumentException("You are not a member of this chat");
+        }
+
+        int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+
+        // Resolve the keyset position, the legacy "since" timestamp always reads forward
+        MessageCursor position = null;
+        if (cursor != null) {
+            position = MessageCursor.decode(cursor);
+        } else if (lastSeenTimestamp != null) {
+            position = new MessageCursor(
+                    OffsetDateTime.ofInstant(Instant.ofEpochMilli(lastSeenTimestamp), ZoneOffset.UTC),
+                    Long.MAX_VALUE);
+            direction = PageDirection.AFTER;
+        }
+
+        // Fetch one extra row to know whether another page exists
+        Limit fetchLimit = Limit.of(pageSize + 1);
+        List<MessageView> messages = switch (direction) {
+            case BEFORE -> position == null
+                    ? messageRepository.findLatestPage(chatRoomId, fetchLimit)
+                    : messageRepository.findPageBefore(chatRoomId, position.sentAt(), position.messageId(),
+                    fetchLimit);
+            case AFTER -> position == null
+                    ? messageRepository.findPageAfter(chatRoomId,
+                    OffsetDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC), 0L, fetchLimit)
+                    : messageRepository.findPageAfter(chatRoomId, position.sentAt(), position.messageId(),
+                    fetchLimit);
+        };
 
-        chatRoomMembershipRepository
-                .findByUserIdAndChatId(userId, chatRoomId)
-                .orElseThrow(() -> new IllegalArgumentException("You are not a member of this chat"));
+        boolean hasMore = messages.size() > pageSize;
+        List<MessageView> page = new ArrayList<>(hasMore ? messages.subList(0, pageSize) : messages);
 
-        Instant since = (lastSeenTimestamp != null)
-                ? Instant.ofEpochMilli(lastSeenTimestamp)
-                : Instant.EPOCH;
+        // Pages are always returned in chronological order
+        if (direction == PageDirection.BEFORE) {
+            Collections.reverse(page);
+        }
 
-        return messageRepository.findByChatRoomIdAndCreatedAtAfter(chatRoomId, since).stream()
-                .map(messageMapper::toMessageDto)
-                .toList();
+        String nextCursor = cursor;
+        if (!page.isEmpty()) {
+            MessageView edge = (direction == PageDirection.BEFORE) ? page.get(0) : page.get(page.size() - 1);
+            nextCursor = new MessageCursor(edge.sentAt(), edge.messageId()).encode();
+        }
+
+        // Recipient statuses for the whole page come from the members' watermarks
+        List<MemberWatermarkView> watermarks = page.isEmpty()
+                ? List.of()
+                : chatRoomMembershipRepository.findWatermarksByChatRoomId(chatRoomId);
+
+        return new MessagePageDto(messageMapper.toMessageDtos(page, watermarks), nextCursor, hasMore);
     }
 
     @Transactional
@@ -168,64 +211,100 @@ public class ChatService {
                         .build())
                 .toList();
         chatRoomMembershipRepository.saveAll(memberships);
+        membershipCache.evict(finalChatRoom.getId());
 
         String content = "Group " + chatRoom.getName() + " created by "
                 + creator.getFirstName() + " " + creator.getLastName();
 
         // Determine recipients
-        List<User> recipients = chatRoomMembershipRepository.findByChatRoomId(chatRoom.getId()).stream()
-                .map(ChatRoomMembership::getUser)
-                .filter(user -> !user.getId().equals(creator.getId()))
+        List<UUID> recipientIds = participants.stream()
+                .map(User::getId)
+                .filter(id -> !id.equals(creator.getId()))
                 .toList();
 
-        processSendMessage(creator, finalChatRoom, content, chatRoom.getType(), recipients, true);
+        processSendMessage(creator, finalChatRoom.getId(), chatRoom.getType(), content, recipientIds, true, null);
 
         return new ChatRoomDto(chatRoom.getId(), chatRoom.getName(), participants.size(), memberships.stream()
                 .map(membershipMapper::toMembershipDto).toList());
     }
 
     @Transactional
-    public void updateMessageStatus(UpdateMessageStatusDto updateDto) {
-        log.info("Updating message with ID {} status to {}", updateDto.messageId(), updateDto.status());
+    public void updateMessageStatus(UUID recipientId, UpdateMessageStatusDto updateDto) {
+        log.info("Updating message with ID {} status to {} for user {}", updateDto.messageId(), updateDto.status(),
+                recipientId);
         MessageStatus status = updateDto.status();
-        UUID recipientId = updateDto.recipientId();
 
         // Find a message
-        Message message = messageRepository.findById(updateDto.messageId())
+        MessageView message = findMessage(updateDto.messageId())
                 .orElseThrow(() -> {
                     log.error("Message with ID {} not found", updateDto.messageId());
                     return new EntityNotFoundException("Message not found");
                 });
 
-        // Find a recipient
-        MessageRecipient recipient = message.getRecipients().stream()
-                .filter(r -> r.getRecipient().getId().equals(recipientId))
-                .findFirst()
-                .orElseThrow(() -> {
-                    log.warn("Recipient with ID {} not found", recipientId);
-                    return new EntityNotFoundException("Recipient not found in message");
-                });
+        // Advance the recipient's watermark, it never moves backwards
+        OffsetDateTime now = OffsetDateTime.now();
+        int updated = switch (status) {
+            case DELIVERED -> chatRoomMembershipRepository.advanceDeliveredWatermark(
+                    message.chatRoomId(), recipientId, message.messageId(), message.sentAt(), now);
+            case READ -> chatRoomMembershipRepository.advanceReadWatermark(
+                    message.chatRoomId(), recipientId, message.messageId(), message.sentAt(), now);
+            case SENT -> throw new IllegalArgumentException("Message status can not be reset to SENT");
+        };
 
-        // Update message status
-        recipient.setStatus(status);
-        switch (status) {
-            case DELIVERED -> {
-                recipient.setDeliveredAt(OffsetDateTime.now());
-                deliveryTrackerService.markAsDelivered(message.getId(), recipientId);
-            }
-            case READ -> recipient.setReadAt(OffsetDateTime.now());
+        if (updated == 0) {
+            log.warn("Recipient with ID {} not found", recipientId);
+            throw new EntityNotFoundException("Recipient not found in message");
         }
 
-        message.setUpdatedAt(OffsetDateTime.now());
-        message = messageRepository.save(message);
+        // Publish a compact receipt instead of the whole message. The watermark covers every earlier
+        // message, so once it is committed it clears their pending deadlines too
+        ReceiptEventDto receipt = new ReceiptEventDto(message.messageId(), recipientId, status, now);
+        TransactionUtils.afterCommit(() -> {
+            deliveryTrackerService.markDeliveredUpTo(message.chatRoomId(), recipientId, message.messageId(),
+                    message.sentAt());
+            receiptPublisher.publish(message.chatRoomId(), receipt);
+        });
+    }
 
-        MessageDto messageDto = messageMapper.toMessageDto(message);
+    @Transactional
+    public void markReadUpTo(Long chatRoomId, UUID userId, ReadUpToDto readUpToDto) {
+        log.info("Marking messages in chat room {} read up to {} for user {}",
+                chatRoomId, readUpToDto.upToMessageId(), userId);
 
-        // Selecting the message destination
-        String destination = resolveDestination(messageDto, message.getChatRoom().getType());
+        if (readUpToDto.upToMessageId() == null) {
+            throw new IllegalArgumentException("Message is required");
+        }
+
+        // The watermark is a (sent_at, id) position, so the message must exist in this room
+        MessageView message = findMessage(readUpToDto.upToMessageId())
+                .filter(m -> m.chatRoomId().equals(chatRoomId))
+                .orElseThrow(() -> {
+                    log.error("Message with ID {} not found in chat room {}", readUpToDto.upToMessageId(), chatRoomId);
+                    return new EntityNotFoundException("Message not found");
+                });
+
+        // A single UPDATE moves the member's read watermark over every earlier message
+        OffsetDateTime now = OffsetDateTime.now();
+        int updated = chatRoomMembershipRepository.advanceReadWatermark(
+                chatRoomId, userId, message.messageId(), message.sentAt(), now);
+        if (updated == 0) {
+            log.warn("User {} is not a member of chat room {}", userId, chatRoomId);
+            throw new IllegalArgumentException("You are not a member of this chat");
+        }
+
+        // With watermarks a READ receipt for the last message covers every earlier one. Reading implies
+        // delivery, so once committed it clears every deadline the new watermark covers
+        ReceiptEventDto receipt = new ReceiptEventDto(message.messageId(), userId, MessageStatus.READ, now);
+        TransactionUtils.afterCommit(() -> {
+            deliveryTrackerService.markDeliveredUpTo(chatRoomId, userId, message.messageId(), message.sentAt());
+            receiptPublisher.publish(chatRoomId, receipt);
+        });
+    }
 
-        // Sending the message
-        sendMessage(destination, messageDto);
+    // A receipt can overtake the write-behind insert of a just broadcast message
+    private Optional<MessageView> findMessage(Long messageId) {
+        return messageRepository.findViewById(messageId)
+                .or(() -> messageWriteBehindService.findUnpersisted(messageId));
     }
 
     private ChatRoom findOrCreatePersonalChatRoom(User sender, User recipient) {
@@ -280,56 +359,49 @@ public class ChatService {
     private void sendMessage(String destination, MessageDto messageDto) {
         try {
             log.info("Sending message to chat room {}", messageDto.chatRoomId());
-            messagingTemplate.convertAndSend(destination, messageDto);
-            for (RecipientDto recipientDto : messageDto.recipients()) {
-                deliveryTrackerService.trackMessage(messageDto, recipientDto.recipientId());
-            }
+            // Deadlines are written before the broadcast, a receipt can only clear what is already tracked
+            deliveryTrackerService.trackMessage(messageDto, messageDto.recipients().stream()
+                    .map(RecipientDto::recipientId)
+                    .toList());
+            encodedMessageSender.send(destination, encodedMessageSender.encode(messageDto));
         } catch (Exception e) {
             log.error("Error while sending a message: {} {}", messageDto, e.getMessage(), e);
         }
     }
 
-    private void processSendMessage(User sender, ChatRoom chatRoom, String content, ChatRoomType chatRoomType,
-                                    List<User> recipients, boolean sendNotification) {
-        Message message = Message.builder()
-                .content(content)
-                .sender(sender)
-                .chatRoom(chatRoom)
-                .sentAt(OffsetDateTime.now())
-                .updatedAt(OffsetDateTime.now())
-                .build();
-
-        // Create message recipients
-        List<MessageRecipient> messageRecipients = createMessageRecipients(recipients,  message);
-
-        // Save message with recipients
-        message.setRecipients(messageRecipients);
-        message = messageRepository.save(message);
-
-        // Convert entity to DTO
-        MessageDto messageDto = messageMapper.toMessageDto(message);
+    private void processSendMessage(User sender, Long chatRoomId, ChatRoomType chatRoomType, String content,
+                                    List<UUID> recipientIds, boolean sendNotification, String clientMessageId) {
+        PendingMessage pendingMessage = new PendingMessage(
+                messageIdAllocator.nextId(),
+                content,
+                sender.getId(),
+                chatRoomId,
+                recipientIds,
+                // Postgres keeps microseconds, the broadcast must carry the same (sent_at, id) as the row
+                OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS),
+                clientMessageId
+        );
+
+        // Convert to DTO
+        MessageDto messageDto = messageMapper.toMessageDto(pendingMessage);
 
         // Selecting the message destination
         String destination = resolveDestination(messageDto, chatRoomType);
 
-        // Sending the message
-        sendMessage(destination, messageDto);
-
-        // Sending notifications
-        if (sendNotification) {
-            notificationService.sendNotification(sender, messageDto, messageRecipients);
-        }
-    }
-
-    private List<MessageRecipient> createMessageRecipients(List<User> recipients ,Message message) {
-        log.info("Creating message recipient list for message {}", message.getId());
-        return recipients.stream()
-                .map(recipient -> MessageRecipient.builder()
-                        .message(message)
-                        .recipient(recipient)
-                        .status(MessageStatus.SENT)
-                        .build())
-                .toList();
+        // The row is written by the write-behind pipeline and acknowledged to the sender. It is queued
+        // before the fan-out so receipts for it resolve while the insert is still pending.
+        // A resend of an already broadcast message is only handed to the writer, which acks the original id
+        TransactionUtils.afterCommit(() -> {
+            messageWriteBehindService.submit(pendingMessage);
+            if (messageWriteBehindService.claimFanout(sender.getId(), clientMessageId)) {
+                sendMessage(destination, messageDto);
+
+                // Sending notifications
+                if (sendNotification) {
+                    notificationService.sendNotification(sender, messageDto, recipientIds);
+                }
+            }
+        });
     }
 
     @Transactional
@@ -359,6 +431,7 @@ public class ChatService {
 
         chatRoomMembership.setRole(request.role());
         chatRoomMembershipRepository.save(chatRoomMembership);
+        membershipCache.evict(chatRoom.getId());
 
         log.info("group role for user {} successfully changed", updateUser.getId());
         return userUtils.convertToUserDto(updateUser);
@@ -382,6 +455,7 @@ public class ChatService {
                 .orElseThrow(() -> new EntityNotFoundException("Chat room membership not found"));
 
         chatRoomMembershipRepository.delete(membership);
+        membershipCache.evict(chatRoom.getId());
 
         List<ChatRoomMembership> memberships =  chatRoomMembershipRepository.findByChatRoomId(chatRoom.getId());
         if (membership.getRole().equals(MemberRole.ADMIN)) {
@@ -399,12 +473,12 @@ public class ChatService {
         String content = user.getFirstName() + " " + user.getLastName() + " has left the group";
 
         // Determine recipients
-        List<User> recipients = memberships.stream()
-                .map(ChatRoomMembership::getUser)
-                .filter(usr -> !usr.getId().equals(user.getId()))
+        List<UUID> recipientIds = memberships.stream()
+                .map(m -> m.getUser().getId())
+                .filter(id -> !id.equals(user.getId()))
                 .toList();
 
-        processSendMessage(systemUser, chatRoom, content, chatRoom.getType(), recipients, false);
+        processSendMessage(systemUser, chatRoom.getId(), chatRoom.getType(), content, recipientIds, false, null);
 
         return new MessageResponseDto("You have left the group successfully");
     }
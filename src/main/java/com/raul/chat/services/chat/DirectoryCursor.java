@@ -0,0 +1,26 @@
+package com.raul.chat.services.chat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque position in a user's contact list: the last contact examined by the previous page.
+ */
+public record DirectoryCursor(
+        UUID lastUserId
+) {
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastUserId.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static DirectoryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            return new DirectoryCursor(UUID.fromString(raw));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.raul.chat.services.chat;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.raul.chat.configs.StompPayloadCodec;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Sends payloads that were serialized to JSON once up front, so fanning the same
+ * payload out to many destinations shares one byte array instead of converting it
+ * again for every send. The object travels along in {@link StompPayloadCodec#SOURCE_HEADER},
+ * so CBOR sessions get it encoded once from the object as well.
+ */
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class EncodedMessageSender {
+
+    SimpMessagingTemplate messagingTemplate;
+    ObjectMapper objectMapper;
+
+    /**
+     * JSON bytes of a payload and the object they were written from; both are shared by
+     * every message built from it and must not be modified.
+     */
+    public record EncodedPayload(byte[] bytes, Object source) {
+    }
+
+    public EncodedPayload encode(Object payload) {
+        try {
+            return new EncodedPayload(objectMapper.writeValueAsBytes(payload), payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize " + payload.getClass().getSimpleName(), e);
+        }
+    }
+
+    public void send(String destination, EncodedPayload payload) {
+        // Headers are per send, the payload array is not copied
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setHeader(StompPayloadCodec.SOURCE_HEADER, payload.source());
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(payload.bytes(), accessor.getMessageHeaders());
+        messagingTemplate.send(destination, message);
+    }
+}
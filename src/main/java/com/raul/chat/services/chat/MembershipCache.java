@@ -0,0 +1,113 @@
+package com.raul.chat.services.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.raul.chat.dtos.chat.MembershipDto;
+import com.raul.chat.models.chat.ChatRoomType;
+import com.raul.chat.models.chat.MemberRole;
+import com.raul.chat.repositories.chat.ChatRoomMembershipRepository;
+import com.raul.chat.repositories.chat.ChatRoomRepository;
+import com.raul.chat.services.utils.TransactionUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Node-local cache of chat room members, loaded lazily per room. Changes to a room's
+ * membership evict the entry here and on every other node through a Redis channel.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MembershipCache implements MessageListener {
+    static String INVALIDATION_CHANNEL = "chat:membership:invalidate";
+
+    ChatRoomRepository chatRoomRepository;
+    ChatRoomMembershipRepository chatRoomMembershipRepository;
+    RedisTemplate<String, Object> redisTemplate;
+    RedisMessageListenerContainer listenerContainer;
+    Cache<Long, RoomMembers> rooms;
+
+    public MembershipCache(ChatRoomRepository chatRoomRepository,
+                           ChatRoomMembershipRepository chatRoomMembershipRepository,
+                           RedisTemplate<String, Object> redisTemplate,
+                           RedisMessageListenerContainer listenerContainer,
+                           @Value("${chat.membership-cache.max-size}") long maxSize,
+                           @Value("${chat.membership-cache.ttl-seconds}") long ttlSeconds) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.chatRoomMembershipRepository = chatRoomMembershipRepository;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.rooms = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    public RoomMembers get(Long chatRoomId) {
+        RoomMembers members = rooms.get(chatRoomId, this::load);
+        if (members == null) {
+            throw new EntityNotFoundException("Chat room not found");
+        }
+        return members;
+    }
+
+    /**
+     * Evicts the room on every node once the current transaction commits.
+     */
+    public void evict(Long chatRoomId) {
+        TransactionUtils.afterCommit(() -> {
+            rooms.invalidate(chatRoomId);
+            try {
+                redisTemplate.convertAndSend(INVALIDATION_CHANNEL, chatRoomId.toString());
+            } catch (Exception e) {
+                log.error("Error while publishing membership invalidation for room {}: {}",
+                        chatRoomId, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object chatRoomId = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (chatRoomId == null) return;
+
+        try {
+            rooms.invalidate(Long.parseLong(chatRoomId.toString()));
+            log.debug("Membership cache evicted for room {}", chatRoomId);
+        } catch (NumberFormatException e) {
+            log.error("Invalid membership invalidation message: {}", chatRoomId);
+        }
+    }
+
+    private RoomMembers load(Long chatRoomId) {
+        ChatRoomType type = chatRoomRepository.findTypeById(chatRoomId).orElse(null);
+        if (type == null) return null;
+
+        Map<UUID, MemberRole> members = chatRoomMembershipRepository
+                .findMembershipDtosByChatRoomId(chatRoomId).stream()
+                .collect(Collectors.toUnmodifiableMap(MembershipDto::userId, MembershipDto::role));
+
+        log.debug("Loaded {} members of room {} into membership cache", members.size(), chatRoomId);
+        return new RoomMembers(type, members);
+    }
+}
@@ -0,0 +1,35 @@
+package com.raul.chat.services.chat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position over {@code (sent_at, id)} of the messages table.
+ * Encoded as URL-safe Base64 so clients treat it as an opaque token.
+ */
+public record MessageCursor(
+        OffsetDateTime sentAt,
+        Long messageId
+) {
+    private static final String SEPARATOR = "|";
+
+    public String encode() {
+        String raw = sentAt.toInstant().toString() + SEPARATOR + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = raw.lastIndexOf(SEPARATOR);
+            Instant sentAt = Instant.parse(raw.substring(0, separatorIndex));
+            Long messageId = Long.parseLong(raw.substring(separatorIndex + 1));
+            return new MessageCursor(OffsetDateTime.ofInstant(sentAt, ZoneOffset.UTC), messageId);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
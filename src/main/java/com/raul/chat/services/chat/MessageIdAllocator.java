@@ -0,0 +1,39 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.repositories.chat.MessageRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Hands out message ids from blocks reserved on {@code messages_id_seq}, so ids are
+ * known before the row is written and only one sequence call is made per block.
+ * The value returned by {@code nextval} is the first id of its block.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class MessageIdAllocator {
+    // Must match "INCREMENT BY" of messages_id_seq
+    static final int BLOCK_SIZE = 50;
+
+    final MessageRepository messageRepository;
+
+    long next = 0;
+    long max = -1;
+
+    public synchronized Long nextId() {
+        if (next > max) {
+            // A fresh SERIAL sequence returns its start value first and only then steps by
+            // INCREMENT BY, so nextval can only be read as the low end of a block
+            long lo = messageRepository.nextIdBlock();
+            next = lo;
+            max = lo + BLOCK_SIZE - 1;
+            log.debug("Reserved message id block {}..{}", next, max);
+        }
+        return next++;
+    }
+}
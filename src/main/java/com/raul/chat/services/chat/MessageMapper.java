@@ -1,32 +1,75 @@
 package com.raul.chat.services.chat;
 
+import com.raul.chat.dtos.chat.MemberWatermarkView;
 import com.raul.chat.dtos.chat.MessageDto;
+import com.raul.chat.dtos.chat.MessageView;
 import com.raul.chat.dtos.chat.RecipientDto;
-import com.raul.chat.models.chat.Message;
+import com.raul.chat.models.chat.MessageStatus;
 import org.springframework.stereotype.Service;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @Service
 public class MessageMapper {
 
-    public MessageDto toMessageDto(Message message) {
-        List<RecipientDto> recipientDtos = message.getRecipients().stream()
-                .map(r -> new RecipientDto(
-                        r.getRecipient().getId(),
-                        r.getStatus(),
-                        r.getDeliveredAt(),
-                        r.getReadAt()
-                ))
+    public MessageDto toMessageDto(PendingMessage message) {
+        List<RecipientDto> recipientDtos = message.recipientIds().stream()
+                .map(recipientId -> new RecipientDto(recipientId, MessageStatus.SENT, null, null))
                 .toList();
 
         return new MessageDto(
-                message.getId(),
-                message.getContent(),
-                message.getSender().getId(),
-                message.getChatRoom().getId(),
+                message.messageId(),
+                message.content(),
+                message.senderId(),
+                message.chatRoomId(),
                 recipientDtos,
-                message.getSentAt()
+                message.sentAt()
         );
     }
+
+    /**
+     * Builds message DTOs whose recipient statuses are derived from the room members'
+     * delivery/read watermarks. Members who joined after a message was sent are not
+     * listed as its recipients.
+     */
+    public List<MessageDto> toMessageDtos(List<MessageView> messages, List<MemberWatermarkView> watermarks) {
+        return messages.stream()
+                .map(m -> new MessageDto(
+                        m.messageId(),
+                        m.content(),
+                        m.senderId(),
+                        m.chatRoomId(),
+                        toRecipientDtos(m, watermarks),
+                        m.sentAt()
+                ))
+                .toList();
+    }
+
+    private List<RecipientDto> toRecipientDtos(MessageView message, List<MemberWatermarkView> watermarks) {
+        return watermarks.stream()
+                .filter(w -> !w.userId().equals(message.senderId()))
+                .filter(w -> w.joinedAt() == null || !w.joinedAt().isAfter(message.sentAt()))
+                .map(w -> toRecipientDto(message, w))
+                .toList();
+    }
+
+    private RecipientDto toRecipientDto(MessageView message, MemberWatermarkView watermark) {
+        if (covers(watermark.lastReadSentAt(), watermark.lastReadMessageId(), message)) {
+            return new RecipientDto(watermark.userId(), MessageStatus.READ,
+                    watermark.lastDeliveredAt(), watermark.lastReadAt());
+        }
+        if (covers(watermark.lastDeliveredSentAt(), watermark.lastDeliveredMessageId(), message)) {
+            return new RecipientDto(watermark.userId(), MessageStatus.DELIVERED,
+                    watermark.lastDeliveredAt(), null);
+        }
+        return new RecipientDto(watermark.userId(), MessageStatus.SENT, null, null);
+    }
+
+    // Watermarks are positions in the history order (sent_at, id), the id alone is not monotonic
+    private static boolean covers(OffsetDateTime watermarkSentAt, Long watermarkId, MessageView message) {
+        if (watermarkSentAt == null || watermarkId == null) return false;
+        return watermarkSentAt.isAfter(message.sentAt())
+                || (watermarkSentAt.isEqual(message.sentAt()) && watermarkId >= message.messageId());
+    }
 }
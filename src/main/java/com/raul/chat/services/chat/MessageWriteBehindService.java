@@ -0,0 +1,263 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.dtos.chat.MessageAckDto;
+import com.raul.chat.dtos.chat.MessageView;
+import com.raul.chat.models.chat.ChatRoom;
+import com.raul.chat.models.chat.Message;
+import com.raul.chat.models.user.User;
+import com.raul.chat.repositories.chat.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists already-broadcast messages in micro-batches on a dedicated writer thread.
+ * A batch is flushed when it reaches {@code batch-size} or when {@code linger-ms}
+ * has passed since its first message, and every message is acknowledged to its
+ * sender once the outcome is known. Inserts are idempotent on the sender's
+ * {@code clientMessageId}: a resend is acknowledged with the id of the stored row.
+ * Until its batch is committed a message can be looked up with {@link #findUnpersisted},
+ * so receipts that overtake the insert still resolve.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class MessageWriteBehindService {
+    static final String ACK_TOPIC = "/user/{id}/queue/acks";
+    static final long IDLE_POLL_MS = 500;
+    static final String FANOUT_KEY_PREFIX = "message:fanout:";
+
+    @Value("${chat.write-behind.batch-size}")
+    int batchSize;
+
+    @Value("${chat.write-behind.linger-ms}")
+    long lingerMs;
+
+    @Value("${chat.write-behind.queue-capacity}")
+    int queueCapacity;
+
+    @Value("${chat.write-behind.shutdown-timeout-ms}")
+    long shutdownTimeoutMs;
+
+    @Value("${chat.write-behind.dedup-ttl-seconds}")
+    long dedupTtlSeconds;
+
+    final EntityManager entityManager;
+    final TransactionTemplate transactionTemplate;
+    final SimpMessagingTemplate messagingTemplate;
+    final MessageRepository messageRepository;
+    final StringRedisTemplate stringRedisTemplate;
+
+    final Map<Long, PendingMessage> unpersisted = new ConcurrentHashMap<>();
+    BlockingQueue<PendingMessage> queue;
+    Thread writerThread;
+    volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        writerThread = new Thread(this::runWriter, "message-write-behind");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join(shutdownTimeoutMs);
+        if (!queue.isEmpty()) {
+            log.warn("Write-behind stopped with {} messages still queued", queue.size());
+        }
+    }
+
+    /**
+     * Claims the fan-out of a client message across all nodes. Returns false when the
+     * sender already had a message with this client id broadcast, so a resend is only
+     * stored (and resolved to the original row) instead of being delivered twice.
+     */
+    public boolean claimFanout(UUID senderId, String clientMessageId) {
+        if (clientMessageId == null) return true;
+        try {
+            return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(
+                    FANOUT_KEY_PREFIX + senderId + ":" + clientMessageId, "1", Duration.ofSeconds(dedupTtlSeconds)));
+        } catch (Exception e) {
+            // Without Redis the unique index still keeps the stored history free of duplicates
+            log.warn("Could not claim fan-out of message {} from {}: {}", clientMessageId, senderId, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Queues the message for persisting. Submit before broadcasting it, so it can be
+     * found by {@link #findUnpersisted} from the moment recipients can see it.
+     */
+    public void submit(PendingMessage message) {
+        unpersisted.put(message.messageId(), message);
+        if (!queue.offer(message)) {
+            // Queue is full, write in the caller's thread to push back on producers
+            log.warn("Write-behind queue full, persisting message {} synchronously", message.messageId());
+            flush(List.of(message));
+        }
+    }
+
+    /**
+     * A message this node accepted but whose row is not committed yet.
+     */
+    public Optional<MessageView> findUnpersisted(Long messageId) {
+        PendingMessage pending = unpersisted.get(messageId);
+        if (pending == null) return Optional.empty();
+        return Optional.of(new MessageView(pending.messageId(), pending.content(), pending.senderId(),
+                pending.chatRoomId(), pending.sentAt()));
+    }
+
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Linger until the batch is full or the window closes
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Write-behind writer interrupted");
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error in write-behind writer: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        try {
+            flushBatch(batch);
+        } finally {
+            // Stored or given up on, either way the database is the source of truth from now on
+            batch.forEach(message -> unpersisted.remove(message.messageId()));
+        }
+    }
+
+    private void flushBatch(List<PendingMessage> batch) {
+        try {
+            List<Long> storedIds = persist(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                acknowledge(batch.get(i), storedIds.get(i), true);
+            }
+            log.debug("Persisted batch of {} messages", batch.size());
+        } catch (Exception e) {
+            log.error("Batch insert of {} messages failed, retrying one by one: {}", batch.size(), e.getMessage());
+            // Isolate the failing message so the rest of the batch is still stored
+            for (PendingMessage message : batch) {
+                try {
+                    acknowledge(message, persist(List.of(message)).get(0), true);
+                } catch (Exception ex) {
+                    log.error("Failed to persist message {}: {}", message.messageId(), ex.getMessage(), ex);
+                    acknowledge(message, message.messageId(), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the batch in one transaction and returns the stored id of every message, in
+     * batch order. A message whose client id is already stored for its sender, by an earlier
+     * flush or earlier in this batch, resolves to that row instead of being inserted again.
+     * A concurrent insert of the same resend on another node fails on the unique index and
+     * resolves on the one-by-one retry.
+     */
+    private List<Long> persist(List<PendingMessage> batch) {
+        return transactionTemplate.execute(status -> {
+            Map<String, Long> storedIds = findStoredIds(batch);
+            List<Long> ids = new ArrayList<>(batch.size());
+            for (PendingMessage pending : batch) {
+                String key = pending.clientMessageId() == null
+                        ? null
+                        : clientKey(pending.senderId(), pending.clientMessageId());
+                Long storedId = key == null ? null : storedIds.get(key);
+                if (storedId == null) {
+                    entityManager.persist(Message.builder()
+                            .id(pending.messageId())
+                            .content(pending.content())
+                            .sender(entityManager.getReference(User.class, pending.senderId()))
+                            .chatRoom(entityManager.getReference(ChatRoom.class, pending.chatRoomId()))
+                            .sentAt(pending.sentAt())
+                            .updatedAt(pending.sentAt())
+                            .clientMessageId(pending.clientMessageId())
+                            .build());
+                    storedId = pending.messageId();
+                    if (key != null) storedIds.put(key, storedId);
+                } else {
+                    log.info("Message {} from {} was already stored as {}",
+                            pending.clientMessageId(), pending.senderId(), storedId);
+                }
+                ids.add(storedId);
+            }
+            return ids;
+        });
+    }
+
+    private Map<String, Long> findStoredIds(List<PendingMessage> batch) {
+        Map<String, Long> storedIds = new HashMap<>();
+        List<String> clientMessageIds = batch.stream()
+                .map(PendingMessage::clientMessageId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        if (clientMessageIds.isEmpty()) return storedIds;
+
+        messageRepository.findByClientMessageIds(clientMessageIds).forEach(view ->
+                storedIds.put(clientKey(view.senderId(), view.clientMessageId()), view.messageId()));
+        return storedIds;
+    }
+
+    private static String clientKey(UUID senderId, String clientMessageId) {
+        return senderId + ":" + clientMessageId;
+    }
+
+    private void acknowledge(PendingMessage message, Long messageId, boolean persisted) {
+        try {
+            String destination = ACK_TOPIC.replace("{id}", message.senderId().toString());
+            messagingTemplate.convertAndSend(destination,
+                    new MessageAckDto(messageId, message.clientMessageId(), persisted));
+        } catch (Exception e) {
+            log.error("Error while acknowledging message {}: {}", message.messageId(), e.getMessage());
+        }
+    }
+}
@@ -1,19 +1,19 @@
 package com.raul.chat.services.chat;
 
+import com.raul.chat.configs.AsyncConfig;
 import com.raul.chat.dtos.auth.UserDto;
 import com.raul.chat.dtos.chat.MessageDto;
 import com.raul.chat.dtos.chat.NotificationDto;
-import com.raul.chat.models.chat.MessageRecipient;
 import com.raul.chat.models.user.User;
 import com.raul.chat.services.utils.UserUtils;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -24,30 +24,33 @@ import java.util.UUID;
 public class NotificationService {
     static String NOTIFICATION_TOPIC = "/user/{id}/queue/notifications";
 
-    SimpMessagingTemplate messagingTemplate;
+    EncodedMessageSender encodedMessageSender;
     PresenceService presenceService;
     PushNotificationService pushNotificationService;
     UserUtils userUtils;
 
-    @Async
-    public void sendNotification(User sender, MessageDto messageDto, List<MessageRecipient> messageRecipients) {
+    @Async(AsyncConfig.NOTIFICATION_EXECUTOR)
+    public void sendNotification(User sender, MessageDto messageDto, Collection<UUID> recipientIds) {
         UserDto userDto = userUtils.convertToUserDto(sender);
         NotificationDto notificationDto = new  NotificationDto(userDto, messageDto.content());
-        messageRecipients.forEach(mr -> {
-            UUID recipientId = mr.getRecipient().getId();
+        // Serialized once and shared by every online recipient
+        EncodedMessageSender.EncodedPayload encoded = encodedMessageSender.encode(notificationDto);
+        // Do not send notification to yourself
+        List<UUID> recipients = recipientIds.stream()
+                .filter(recipientId -> !recipientId.equals(sender.getId()))
+                .toList();
+        if (recipients.isEmpty()) return;
 
-            // Do not send notification to yourself
-            if (recipientId.equals(sender.getId())) return;
-
-            // Check the user status ONLINE/OFFLINE
-            if (presenceService.isOnline(recipientId)) {
-                log.info("User {} online, skip push, rely on WebSocket", recipientId);
-                String notificationDestination = NOTIFICATION_TOPIC.replace("{id}", recipientId.toString());
-                messagingTemplate.convertAndSend(notificationDestination, notificationDto);
-            } else {
-                log.info("User {} offline, send push notification", recipientId);
-                pushNotificationService.sendPush(recipientId, notificationDto);
-            }
+        // Check the users status ONLINE/OFFLINE in one round trip
+        PresenceSplit presence = presenceService.partition(recipients);
+        presence.online().forEach(recipientId -> {
+            String notificationDestination = NOTIFICATION_TOPIC.replace("{id}", recipientId.toString());
+            encodedMessageSender.send(notificationDestination, encoded);
         });
+
+        if (!presence.offline().isEmpty()) {
+            pushNotificationService.sendPushBatch(presence.offline(), notificationDto);
+        }
+        log.info("Notified {} recipients over WebSocket, {} by push", presence.online().size(), presence.offline().size());
     }
 }
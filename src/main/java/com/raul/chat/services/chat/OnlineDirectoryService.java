@@ -0,0 +1,134 @@
+package com.raul.chat.services.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.raul.chat.dtos.auth.UserDto;
+import com.raul.chat.dtos.chat.OnlineUsersPageDto;
+import com.raul.chat.dtos.chat.PresenceEventDto;
+import com.raul.chat.models.user.Status;
+import com.raul.chat.repositories.chat.ChatRoomMembershipRepository;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Online users among the caller's contacts, i.e. everyone sharing a chat room with them.
+ * The contact list is walked in a stable order, checking presence one chunk per pipelined
+ * round trip, and a cursor marks where the next page resumes. Profiles come from
+ * {@link UserProfileCache}. Status changes are pushed the same way, to the online contacts
+ * of the user only.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OnlineDirectoryService {
+    static int SCAN_CHUNK_SIZE = 200;
+    static String PRESENCE_TOPIC = "/user/{id}/queue/presence";
+
+    ChatRoomMembershipRepository chatRoomMembershipRepository;
+    PresenceService presenceService;
+    UserProfileCache userProfileCache;
+    SimpMessagingTemplate messagingTemplate;
+    int defaultPageSize;
+    int maxPageSize;
+    Cache<UUID, List<UUID>> contacts;
+
+    public OnlineDirectoryService(ChatRoomMembershipRepository chatRoomMembershipRepository,
+                                  PresenceService presenceService,
+                                  UserProfileCache userProfileCache,
+                                  SimpMessagingTemplate messagingTemplate,
+                                  @Value("${chat.directory.default-page-size}") int defaultPageSize,
+                                  @Value("${chat.directory.max-page-size}") int maxPageSize,
+                                  @Value("${chat.directory.contacts-cache.max-size}") long contactsMaxSize,
+                                  @Value("${chat.directory.contacts-cache.ttl-seconds}") long contactsTtlSeconds) {
+        this.chatRoomMembershipRepository = chatRoomMembershipRepository;
+        this.presenceService = presenceService;
+        this.userProfileCache = userProfileCache;
+        this.messagingTemplate = messagingTemplate;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.contacts = Caffeine.newBuilder()
+                .maximumSize(contactsMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(contactsTtlSeconds))
+                .build();
+    }
+
+    public OnlineUsersPageDto getOnlineContacts(UUID userId, String cursor, Integer size) {
+        int pageSize = (size == null || size <= 0) ? defaultPageSize : Math.min(size, maxPageSize);
+        List<UUID> contactIds = contacts.get(userId, this::loadContacts);
+
+        int from = 0;
+        if (cursor != null) {
+            int index = Collections.binarySearch(contactIds, DirectoryCursor.decode(cursor).lastUserId());
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+
+        List<UUID> onlineIds = new ArrayList<>(pageSize);
+        int position = from;
+        while (position < contactIds.size() && onlineIds.size() < pageSize) {
+            List<UUID> chunk = contactIds.subList(position, Math.min(position + SCAN_CHUNK_SIZE, contactIds.size()));
+            Set<UUID> online = new HashSet<>(presenceService.partition(chunk).online());
+            for (UUID contactId : chunk) {
+                position++;
+                if (online.contains(contactId)) {
+                    onlineIds.add(contactId);
+                    if (onlineIds.size() == pageSize) break;
+                }
+            }
+        }
+
+        Map<UUID, UserDto> profiles = userProfileCache.getAll(onlineIds);
+        List<UserDto> users = onlineIds.stream()
+                .map(profiles::get)
+                .filter(Objects::nonNull)
+                .map(this::asOnline)
+                .toList();
+
+        boolean hasMore = position < contactIds.size();
+        String nextCursor = position > from
+                ? new DirectoryCursor(contactIds.get(position - 1)).encode()
+                : cursor;
+        log.debug("Directory page for user {}: {} online of {} contacts scanned", userId, users.size(), position - from);
+        return new OnlineUsersPageDto(users, nextCursor, hasMore);
+    }
+
+    public void publishStatus(UUID userId, Status status) {
+        List<UUID> contactIds = contacts.get(userId, this::loadContacts);
+        PresenceEventDto event = new PresenceEventDto(userId, status);
+
+        int notified = 0;
+        for (int from = 0; from < contactIds.size(); from += SCAN_CHUNK_SIZE) {
+            List<UUID> chunk = contactIds.subList(from, Math.min(from + SCAN_CHUNK_SIZE, contactIds.size()));
+            for (UUID contactId : presenceService.partition(chunk).online()) {
+                messagingTemplate.convertAndSend(PRESENCE_TOPIC.replace("{id}", contactId.toString()), event);
+                notified++;
+            }
+        }
+        log.debug("Status {} of user {} pushed to {} of {} contacts", status, userId, notified, contactIds.size());
+    }
+
+    private List<UUID> loadContacts(UUID userId) {
+        List<UUID> contactIds = new ArrayList<>(chatRoomMembershipRepository.findContactIdsByUserId(userId));
+        Collections.sort(contactIds);
+        return List.copyOf(contactIds);
+    }
+
+    // Profiles are cached, so the stored status may lag behind presence
+    private UserDto asOnline(UserDto user) {
+        return new UserDto(user.userId(), user.firstName(), user.lastName(), user.email(),
+                user.role(), user.imageUrl(), Status.ONLINE);
+    }
+}
@@ -0,0 +1,21 @@
+package com.raul.chat.services.chat;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A message that has already been broadcast and is waiting to be persisted by
+ * {@link MessageWriteBehindService}. Holds ids only, so it can cross threads
+ * without dragging detached entities along.
+ */
+public record PendingMessage(
+        Long messageId,
+        String content,
+        UUID senderId,
+        Long chatRoomId,
+        List<UUID> recipientIds,
+        OffsetDateTime sentAt,
+        String clientMessageId
+) {
+}
@@ -1,68 +1,298 @@
 package com.raul.chat.services.chat;
 
-import com.raul.chat.dtos.auth.UserDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.raul.chat.models.user.Status;
-import com.raul.chat.repositories.auth.UserRepository;
-import com.raul.chat.services.utils.UserUtils;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
 
+/**
+ * Presence is kept per user in a Redis hash ({@code user:status:{userId}}) with one field
+ * per node that holds sessions of the user, valued with the epoch millis (Redis clock) until
+ * which the node vouches for it. A node counts its own sessions per user, writes to Redis
+ * only on the first connect and last disconnect, and refreshes its fields in one pipelined
+ * batch per interval. Every write drops fields whose deadline has passed, so a crashed
+ * node's field does not outlive its TTL while other nodes keep the key alive. Lookups for
+ * other users go through a short-lived local mirror.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
-@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
 public class PresenceService {
-    static String STATUS_KEY_PREFIX = "user:status:";
-    static String ONLINE_USERS_KEY = "online:users";
-    static long TTL_SECONDS = 60;
+    static final String STATUS_KEY_PREFIX = "user:status:";
+    static final String ONLINE_USERS_KEY = "online:users";
+    static final int REFRESH_CHUNK_SIZE = 1000;
+    static final int LOCK_STRIPES = 64;
 
-    RedisTemplate<String, Object> redisTemplate;
-    UserRepository userRepository;
-    UserUtils userUtils;
+    // Removes the fields of other nodes that stopped refreshing and counts the live ones
+    static final String PRUNE_STALE_FIELDS = """
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local live = 0
+            local fields = redis.call('HGETALL', KEYS[1])
+            for i = 1, #fields, 2 do
+                local deadline = tonumber(fields[i + 1])
+                if fields[i] ~= ARGV[1] then
+                    if deadline == nil or deadline < now then
+                        redis.call('HDEL', KEYS[1], fields[i])
+                    else
+                        live = live + 1
+                    end
+                end
+            end
+            """;
 
+    static final RedisScript<Long> NODE_ONLINE_SCRIPT = new DefaultRedisScript<>(PRUNE_STALE_FIELDS + """
+            local ttl = tonumber(ARGV[2])
+            redis.call('HSET', KEYS[1], ARGV[1], string.format('%.0f', now + ttl * 1000))
+            redis.call('EXPIRE', KEYS[1], ttl)
+            redis.call('SADD', KEYS[2], ARGV[3])
+            return live + 1
+            """, Long.class);
+
+    static final RedisScript<Long> NODE_OFFLINE_SCRIPT = new DefaultRedisScript<>(PRUNE_STALE_FIELDS + """
+            redis.call('HDEL', KEYS[1], ARGV[1])
+            if live == 0 then
+                redis.call('DEL', KEYS[1])
+                redis.call('SREM', KEYS[2], ARGV[2])
+            end
+            return live
+            """, Long.class);
+
+    @Value("${chat.presence.ttl-seconds}")
+    long ttlSeconds;
+
+    @Value("${chat.presence.mirror-ttl-ms}")
+    long mirrorTtlMs;
+
+    @Value("${chat.presence.mirror-max-size}")
+    long mirrorMaxSize;
+
+    final StringRedisTemplate stringRedisTemplate;
+
+    final String nodeId = UUID.randomUUID().toString();
+    final Map<String, UUID> sessions = new ConcurrentHashMap<>();
+    final Map<UUID, Integer> connections = new ConcurrentHashMap<>();
+    // Users whose field this node last wrote to Redis; guarded by the user's lock stripe
+    final Set<UUID> published = ConcurrentHashMap.newKeySet();
+    final Lock[] locks = IntStream.range(0, LOCK_STRIPES).mapToObj(i -> new ReentrantLock()).toArray(Lock[]::new);
+    Cache<UUID, Boolean> mirror;
+
+    @PostConstruct
+    public void init() {
+        mirror = Caffeine.newBuilder()
+                .maximumSize(mirrorMaxSize)
+                .expireAfterWrite(Duration.ofMillis(mirrorTtlMs))
+                .build();
+    }
+
+    /**
+     * Registers a STOMP session. Only the user's first session on this node touches Redis.
+     */
+    public void connect(String sessionId, UUID userId) {
+        if (sessions.putIfAbsent(sessionId, userId) != null) return;
+
+        if (connections.merge(userId, 1, Integer::sum) == 1) {
+            syncNode(userId);
+        }
+        mirror.put(userId, true);
+    }
+
+    /**
+     * Unregisters a STOMP session; safe to call more than once for the same session.
+     */
+    public void disconnect(String sessionId) {
+        UUID userId = sessionId == null ? null : sessions.remove(sessionId);
+        if (userId == null) return;
+
+        if (connections.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null) == null) {
+            syncNode(userId);
+        }
+        mirror.invalidate(userId);
+    }
+
+    /**
+     * Forces this node's status for a user regardless of its open sessions, e.g. on logout.
+     * Fields of other nodes that still hold sessions of the user are left alone.
+     */
     public void updateUserStatus(UUID userId, Status status) {
-        String key = STATUS_KEY_PREFIX + userId;
-
-        if (status == Status.ONLINE) {
-            redisTemplate.opsForValue().set(key, "ONLINE", TTL_SECONDS, TimeUnit.SECONDS);
-            redisTemplate.opsForSet().add(ONLINE_USERS_KEY, userId.toString());
-            log.info("User {} marked ONLINE in Redis", userId);
-        } else {
-            redisTemplate.delete(key);
-            redisTemplate.opsForSet().remove(ONLINE_USERS_KEY, userId.toString());
-            log.info("User {} marked OFFLINE in Redis", userId);
+        Lock lock = lockFor(userId);
+        lock.lock();
+        try {
+            if (status == Status.ONLINE) {
+                markNodeOnline(userId);
+                published.add(userId);
+            } else {
+                markNodeOffline(userId);
+                published.remove(userId);
+            }
+        } finally {
+            lock.unlock();
         }
+        mirror.invalidate(userId);
     }
 
-    public List<UserDto> getOnlineUsers() {
-        Set<Object> onlineUserIds = redisTemplate.opsForSet().members(ONLINE_USERS_KEY);
-        if (onlineUserIds == null || onlineUserIds.isEmpty()) {
-            return List.of();
+    /**
+     * Splits users into online and offline with at most one pipelined Redis round trip
+     * for those neither connected here nor in the local mirror.
+     */
+    public PresenceSplit partition(Collection<UUID> userIds) {
+        List<UUID> online = new ArrayList<>();
+        List<UUID> offline = new ArrayList<>();
+        List<UUID> unknown = new ArrayList<>();
+
+        for (UUID userId : userIds) {
+            Boolean cached = connections.containsKey(userId) ? Boolean.TRUE : mirror.getIfPresent(userId);
+            if (cached == null) {
+                unknown.add(userId);
+            } else {
+                (cached ? online : offline).add(userId);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (UUID userId : unknown) {
+                    connection.keyCommands().exists(raw(STATUS_KEY_PREFIX + userId));
+                }
+                return null;
+            });
+            for (int i = 0; i < unknown.size(); i++) {
+                boolean isOnline = Boolean.TRUE.equals(exists.get(i));
+                mirror.put(unknown.get(i), isOnline);
+                (isOnline ? online : offline).add(unknown.get(i));
+            }
         }
 
-        return onlineUserIds.stream()
-                .map(Object::toString)
-                .map(UUID::fromString)
-                .map(id -> userRepository.findById(id)
-                        .map(userUtils::convertToUserDto)
-                        .orElse(null))
-                .filter(Objects::nonNull)
-                .toList();
+        return new PresenceSplit(online, offline);
     }
 
     public boolean isOnline(UUID userId) {
-        String key = STATUS_KEY_PREFIX + userId;
-        String status = (String) redisTemplate.opsForValue().get(key);
-        return "ONLINE".equals(status);
+        if (connections.containsKey(userId)) return true;
+        return mirror.get(userId, id -> Boolean.TRUE.equals(stringRedisTemplate.hasKey(STATUS_KEY_PREFIX + id)));
+    }
+
+    /**
+     * Keeps every user with a session on this node alive in Redis. Dead sessions are closed
+     * by the broker's heartbeat checks and leave through {@link #disconnect(String)}.
+     */
+    @Scheduled(fixedDelayString = "${chat.presence.refresh-interval-ms}")
+    public void refresh() {
+        if (connections.isEmpty()) return;
+
+        List<UUID> userIds = new ArrayList<>(connections.keySet());
+        byte[] script = raw(NODE_ONLINE_SCRIPT.getScriptAsString());
+        String sha = NODE_ONLINE_SCRIPT.getSha1();
+        byte[] field = raw(nodeId);
+        byte[] ttl = raw(String.valueOf(ttlSeconds));
+        for (int from = 0; from < userIds.size(); from += REFRESH_CHUNK_SIZE) {
+            List<UUID> chunk = userIds.subList(from, Math.min(from + REFRESH_CHUNK_SIZE, userIds.size()));
+            try {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    // Loading first keeps the pipelined EVALSHAs valid after a Redis restart
+                    connection.scriptingCommands().scriptLoad(script);
+                    for (UUID userId : chunk) {
+                        // Re-asserts the field too, in case the key expired during a Redis hiccup
+                        connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 2,
+                                raw(STATUS_KEY_PREFIX + userId), raw(ONLINE_USERS_KEY), field, ttl, raw(userId.toString()));
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                log.error("Error while refreshing presence for {} users: {}", chunk.size(), e.getMessage());
+            }
+            // A user whose last session closed while the batch was in flight may have been re-added
+            chunk.stream().filter(userId -> !connections.containsKey(userId)).forEach(this::retract);
+        }
+        log.debug("Refreshed presence of {} users", userIds.size());
+    }
+
+    /**
+     * Brings this node's Redis field in line with its current session count. Runs after the
+     * count changed and outside of the map operation, so Redis latency never blocks other
+     * users' bins; the stripe lock keeps the writes of one user in order, and whichever
+     * thread gets the lock last writes the final state.
+     */
+    private void syncNode(UUID userId) {
+        Lock lock = lockFor(userId);
+        lock.lock();
+        try {
+            boolean connected = connections.containsKey(userId);
+            if (connected == published.contains(userId)) return;
+            if (connected) {
+                markNodeOnline(userId);
+                published.add(userId);
+            } else {
+                markNodeOffline(userId);
+                published.remove(userId);
+            }
+        } catch (Exception e) {
+            // The next refresh re-asserts connected users; a stale field is pruned once its deadline passes
+            log.error("Could not update presence of user {} in Redis: {}", userId, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void retract(UUID userId) {
+        Lock lock = lockFor(userId);
+        lock.lock();
+        try {
+            if (connections.containsKey(userId)) return;
+            markNodeOffline(userId);
+            published.remove(userId);
+        } catch (Exception e) {
+            log.error("Could not retract presence of user {} from Redis: {}", userId, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void markNodeOnline(UUID userId) {
+        stringRedisTemplate.execute(NODE_ONLINE_SCRIPT, List.of(STATUS_KEY_PREFIX + userId, ONLINE_USERS_KEY),
+                nodeId, String.valueOf(ttlSeconds), userId.toString());
+        log.info("User {} marked ONLINE in Redis", userId);
+    }
+
+    private void markNodeOffline(UUID userId) {
+        // Other nodes may still hold sessions of this user
+        Long live = stringRedisTemplate.execute(NODE_OFFLINE_SCRIPT,
+                List.of(STATUS_KEY_PREFIX + userId, ONLINE_USERS_KEY), nodeId, userId.toString());
+        if (live != null && live == 0) {
+            log.info("User {} marked OFFLINE in Redis", userId);
+        }
+    }
+
+    private Lock lockFor(UUID userId) {
+        return locks[Math.floorMod(userId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,10 @@
+package com.raul.chat.services.chat;
+
+import java.util.List;
+import java.util.UUID;
+
+public record PresenceSplit(
+        List<UUID> online,
+        List<UUID> offline
+) {
+}
@@ -1,5 +1,6 @@
 package com.raul.chat.services.chat;
 
+import com.raul.chat.configs.AsyncConfig;
 import com.raul.chat.dtos.chat.NotificationDto;
 import com.raul.chat.services.auth.UserDevicesService;
 import lombok.AccessLevel;
@@ -8,10 +9,12 @@ import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import com.google.firebase.messaging.BatchResponse;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.Message;
 import com.google.firebase.messaging.Notification;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -21,26 +24,41 @@ import java.util.UUID;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class PushNotificationService {
 
+    // FCM accepts at most 500 messages per sendEach call
+    static int MAX_BATCH_SIZE = 500;
+
     UserDevicesService userDevicesService;
 
-    @Async
-    public void sendPush(UUID recipientId, NotificationDto notificationDto) {
-        List<String> deviceTokens = userDevicesService.getOfflineDeviceTokensByUserId(recipientId);
+    /**
+     * Pushes one notification to the offline devices of all recipients, loading the
+     * device tokens in one query and sending them in multicast-sized batches.
+     */
+    @Async(AsyncConfig.PUSH_EXECUTOR)
+    public void sendPushBatch(Collection<UUID> recipientIds, NotificationDto notificationDto) {
+        if (recipientIds.isEmpty()) return;
+
+        List<String> deviceTokens = userDevicesService.getOfflineDeviceTokensByUserIds(recipientIds);
+        if (deviceTokens.isEmpty()) return;
+
+        Notification notification = Notification.builder()
+                .setTitle(notificationDto.userDto().firstName())
+                .setBody(notificationDto.messageContent())
+                .build();
 
-        for (String deviceToken : deviceTokens) {
-            Message message = Message.builder()
-                    .setToken(deviceToken)
-                    .setNotification(Notification.builder()
-                            .setTitle(notificationDto.userDto().firstName())
-                            .setBody(notificationDto.messageContent())
+        for (int from = 0; from < deviceTokens.size(); from += MAX_BATCH_SIZE) {
+            List<Message> messages = deviceTokens.subList(from, Math.min(from + MAX_BATCH_SIZE, deviceTokens.size()))
+                    .stream()
+                    .map(deviceToken -> Message.builder()
+                            .setToken(deviceToken)
+                            .setNotification(notification)
                             .build())
-                    .build();
+                    .toList();
 
             try {
-                String response = FirebaseMessaging.getInstance().send(message);
-                log.info("Sent message: {}", response);
+                BatchResponse response = FirebaseMessaging.getInstance().sendEach(messages);
+                log.info("Sent {} push messages, {} failed", response.getSuccessCount(), response.getFailureCount());
             } catch (Exception e) {
-                log.error("Error while sending push message", e);
+                log.error("Error while sending {} push messages", messages.size(), e);
             }
         }
     }
@@ -0,0 +1,70 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.dtos.chat.ReceiptEventDto;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Publishes delivery/read receipts on the per-room receipts topic as arrays of
+ * {@link ReceiptEventDto}. With coalescing enabled, receipts of a room are buffered
+ * and flushed together once per window instead of one frame per receipt.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ReceiptPublisher {
+    static final String RECEIPTS_TOPIC = "/topic/chat-room.{id}.receipts";
+
+    @Value("${chat.receipts.coalesce}")
+    boolean coalesce;
+
+    final SimpMessagingTemplate messagingTemplate;
+    final Map<Long, List<ReceiptEventDto>> pending = new ConcurrentHashMap<>();
+
+    public void publish(Long chatRoomId, ReceiptEventDto event) {
+        if (!coalesce) {
+            send(chatRoomId, List.of(event));
+            return;
+        }
+
+        pending.compute(chatRoomId, (id, events) -> {
+            List<ReceiptEventDto> buffer = (events == null) ? new ArrayList<>() : events;
+            buffer.add(event);
+            return buffer;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${chat.receipts.coalesce-window-ms}")
+    public void flush() {
+        if (!coalesce) return;
+
+        for (Long chatRoomId : pending.keySet()) {
+            List<ReceiptEventDto> events = pending.remove(chatRoomId);
+            if (events != null && !events.isEmpty()) {
+                send(chatRoomId, events);
+            }
+        }
+    }
+
+    private void send(Long chatRoomId, List<ReceiptEventDto> events) {
+        try {
+            String destination = RECEIPTS_TOPIC.replace("{id}", chatRoomId.toString());
+            messagingTemplate.convertAndSend(destination, events);
+            log.debug("Sent {} receipts to chat room {}", events.size(), chatRoomId);
+        } catch (Exception e) {
+            log.error("Error while sending receipts to chat room {}: {}", chatRoomId, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.raul.chat.services.chat;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs chat work on a fixed set of single-threaded lanes. Work for the same room always
+ * hashes to the same lane and runs in submission order, while different rooms proceed
+ * in parallel. A full lane blocks the submitting thread instead of dropping work, and a
+ * failing task is handed to its error callback instead of being lost on the lane.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class RoomDispatcher {
+
+    @Value("${chat.dispatch.lanes}")
+    int laneCount;
+
+    @Value("${chat.dispatch.lane-queue-capacity}")
+    int laneQueueCapacity;
+
+    @Value("${chat.dispatch.shutdown-timeout-ms}")
+    long shutdownTimeoutMs;
+
+    ThreadPoolExecutor[] lanes;
+
+    @PostConstruct
+    public void start() {
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        lanes = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            String threadName = "room-lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(laneQueueCapacity),
+                    task -> new Thread(task, threadName),
+                    blockWhenFull());
+        }
+        log.info("Room dispatcher started with {} lanes", count);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.awaitTermination(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void dispatchToRoom(Long chatRoomId, Runnable task, Consumer<Exception> onError) {
+        dispatch(Long.hashCode(chatRoomId), task, onError);
+    }
+
+    /**
+     * Personal chats are ordered by their (unordered) pair of users, before and after their
+     * room exists, so the first message can not be overtaken by the ones that follow it.
+     */
+    public void dispatchToPair(UUID firstUserId, UUID secondUserId, Runnable task, Consumer<Exception> onError) {
+        dispatch(firstUserId.hashCode() ^ secondUserId.hashCode(), task, onError);
+    }
+
+    private void dispatch(int hash, Runnable task, Consumer<Exception> onError) {
+        // Spread the hash so neighbouring ids do not cluster on one lane
+        int spread = hash ^ (hash >>> 16);
+        lanes[Math.floorMod(spread, lanes.length)].execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Error while processing room task: {}", e.getMessage(), e);
+                try {
+                    onError.accept(e);
+                } catch (Exception reportError) {
+                    log.error("Error while reporting a room task failure: {}", reportError.getMessage());
+                }
+            }
+        });
+    }
+
+    private RejectedExecutionHandler blockWhenFull() {
+        AtomicInteger blocked = new AtomicInteger();
+        return (task, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Room dispatcher is shut down");
+            }
+            if (blocked.incrementAndGet() % 1000 == 1) {
+                log.warn("Room lane queue full, blocking producer");
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a room lane", e);
+            }
+        };
+    }
+}
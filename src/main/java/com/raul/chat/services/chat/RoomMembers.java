@@ -0,0 +1,26 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.models.chat.ChatRoomType;
+import com.raul.chat.models.chat.MemberRole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of a chat room's type and its members' roles, as held by {@link MembershipCache}.
+ */
+public record RoomMembers(
+        ChatRoomType type,
+        Map<UUID, MemberRole> members
+) {
+    public boolean isMember(UUID userId) {
+        return members.containsKey(userId);
+    }
+
+    public List<UUID> recipientsExcept(UUID senderId) {
+        return members.keySet().stream()
+                .filter(memberId -> !memberId.equals(senderId))
+                .toList();
+    }
+}
@@ -0,0 +1,61 @@
+package com.raul.chat.services.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.raul.chat.dtos.auth.UserDto;
+import com.raul.chat.models.user.User;
+import com.raul.chat.repositories.auth.UserRepository;
+import com.raul.chat.services.utils.UserUtils;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Node-local cache of user profiles. Misses of a lookup are loaded together with one
+ * {@code findAllById}; entries simply expire, as profiles change rarely.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserProfileCache {
+
+    UserRepository userRepository;
+    UserUtils userUtils;
+    Cache<UUID, UserDto> profiles;
+
+    public UserProfileCache(UserRepository userRepository,
+                            UserUtils userUtils,
+                            @Value("${chat.directory.profile-cache.max-size}") long maxSize,
+                            @Value("${chat.directory.profile-cache.ttl-seconds}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.userUtils = userUtils;
+        this.profiles = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * Returns the profiles of the given users that exist; unknown ids are left out.
+     */
+    public Map<UUID, UserDto> getAll(Collection<UUID> userIds) {
+        return profiles.getAll(userIds, this::load);
+    }
+
+    private Map<UUID, UserDto> load(Collection<? extends UUID> userIds) {
+        List<UUID> ids = List.copyOf(userIds);
+        Map<UUID, UserDto> loaded = userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, userUtils::convertToUserDto));
+        log.debug("Loaded {} of {} user profiles into cache", loaded.size(), ids.size());
+        return loaded;
+    }
+}
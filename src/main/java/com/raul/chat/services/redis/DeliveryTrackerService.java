@@ -1,39 +1,255 @@
 package com.raul.chat.services.redis;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.raul.chat.configs.AsyncConfig;
 import com.raul.chat.dtos.chat.MessageDto;
+import com.raul.chat.models.user.User;
+import com.raul.chat.repositories.auth.UserRepository;
+import com.raul.chat.services.chat.NotificationService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Schedules the offline fallback for every message sent to a recipient. Deadlines live in
+ * one sorted set scored by due time; the message itself is stored once under a payload key.
+ * Every node sweeps the set, but entries are claimed atomically, so each overdue delivery
+ * is notified exactly once. A per room and recipient index, scored by send time, lets a
+ * delivery watermark clear every deadline it covers at once.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
-@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
 public class DeliveryTrackerService {
-    static String PREFIX = "message:delivery:";
-    static long TTL_SECONDS = 5;
+    static final String DEADLINES_KEY = "delivery:deadlines";
+    static final String PAYLOAD_PREFIX = "delivery:payload:";
+    static final String PENDING_PREFIX = "delivery:pending:";
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    // Pops up to ARGV[2] members due at ARGV[1] in one atomic step
+    static final RedisScript<List> CLAIM_DUE_SCRIPT = new DefaultRedisScript<>("""
+            local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+            if #due > 0 then
+                redis.call('ZREM', KEYS[1], unpack(due))
+            end
+            return due
+            """, List.class);
 
-    @Async
-    public void trackMessage(MessageDto messageDto, UUID recipientId) {
-        String key = PREFIX + messageDto.messageId() + ":" + recipientId;
-        redisTemplate.opsForValue().set(key, messageDto, TTL_SECONDS, TimeUnit.SECONDS);
-        log.info("Tracking delivery for message {} to user {} with TTL {}s",
-                messageDto.messageId(), recipientId, TTL_SECONDS);
+    // Removes every pending message of KEYS[1] at or before the watermark (ARGV[1] score, ARGV[2] id)
+    // together with its deadline in KEYS[2]; members sharing the watermark's send time are compared by id
+    static final RedisScript<Long> CLEAR_UP_TO_SCRIPT = new DefaultRedisScript<>("""
+            local covered = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', '(' .. ARGV[1])
+            for _, id in ipairs(redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[1], ARGV[1])) do
+                if tonumber(id) <= tonumber(ARGV[2]) then
+                    covered[#covered + 1] = id
+                end
+            end
+            for i = 1, #covered, 500 do
+                local last = math.min(i + 499, #covered)
+                local deadlines = {}
+                for j = i, last do
+                    deadlines[#deadlines + 1] = covered[j] .. ':' .. ARGV[3]
+                end
+                redis.call('ZREM', KEYS[2], unpack(deadlines))
+                redis.call('ZREM', KEYS[1], unpack(covered, i, last))
+            end
+            return #covered
+            """, Long.class);
+
+    @Value("${chat.delivery.timeout-ms}")
+    long timeoutMs;
+
+    @Value("${chat.delivery.sweep-batch-size}")
+    int sweepBatchSize;
+
+    @Value("${chat.delivery.payload-ttl-seconds}")
+    long payloadTtlSeconds;
+
+    final StringRedisTemplate stringRedisTemplate;
+    final ObjectMapper objectMapper;
+    final NotificationService notificationService;
+    final UserRepository userRepository;
+
+    /**
+     * Starts the delivery deadline for every recipient of the message. The payload is
+     * serialized once without its recipient list, and all entries are written in a
+     * single pipeline. Runs in the caller's thread and must complete before the message
+     * is broadcast, so no delivery receipt can clear the room index ahead of its entries.
+     * A failure is logged and the message is sent untracked.
+     */
+    public void trackMessage(MessageDto messageDto, Collection<UUID> recipientIds) {
+        if (recipientIds.isEmpty()) return;
+
+        double deadline = System.currentTimeMillis() + timeoutMs;
+        MessageDto payload = new MessageDto(messageDto.messageId(), messageDto.content(), messageDto.senderId(),
+                messageDto.chatRoomId(), List.of(), messageDto.sentAt());
+
+        byte[] payloadKey = raw(PAYLOAD_PREFIX + messageDto.messageId());
+        byte[] payloadValue;
+        try {
+            payloadValue = objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize message {} for delivery tracking", messageDto.messageId(), e);
+            return;
+        }
+
+        Set<Tuple> deadlines = recipientIds.stream()
+                .map(recipientId -> (Tuple) new DefaultTuple(
+                        raw(member(messageDto.messageId(), recipientId)), deadline))
+                .collect(Collectors.toSet());
+        byte[] messageId = raw(messageDto.messageId().toString());
+        long position = position(messageDto.sentAt());
+
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.stringCommands().setEx(payloadKey, payloadTtlSeconds, payloadValue);
+                connection.zSetCommands().zAdd(raw(DEADLINES_KEY), deadlines);
+                for (UUID recipientId : recipientIds) {
+                    byte[] pendingKey = raw(pendingKey(messageDto.chatRoomId(), recipientId));
+                    connection.zSetCommands().zAdd(pendingKey, position, messageId);
+                    connection.keyCommands().expire(pendingKey, payloadTtlSeconds);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error while tracking delivery of message {}: {}", messageDto.messageId(), e.getMessage());
+            return;
+        }
+        log.debug("Tracking delivery for message {} to {} recipient(s) with timeout {}ms",
+                messageDto.messageId(), recipientIds.size(), timeoutMs);
+    }
+
+    /**
+     * Clears the deadline of every message in the room the recipient's watermark now covers,
+     * i.e. every message sent before {@code sentAt}, or at it with an id up to {@code messageId}.
+     * Call it once the watermark is committed.
+     */
+    @Async(AsyncConfig.DELIVERY_EXECUTOR)
+    public void markDeliveredUpTo(Long chatRoomId, UUID recipientId, Long messageId, OffsetDateTime sentAt) {
+        try {
+            Long cleared = stringRedisTemplate.execute(CLEAR_UP_TO_SCRIPT,
+                    List.of(pendingKey(chatRoomId, recipientId), DEADLINES_KEY),
+                    String.valueOf(position(sentAt)), messageId.toString(), recipientId.toString());
+            log.debug("Messages up to {} delivered to user {}, {} deadline(s) removed", messageId, recipientId, cleared);
+        } catch (Exception e) {
+            log.error("Error while clearing delivery deadlines of user {} in chat room {}: {}",
+                    recipientId, chatRoomId, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.delivery.sweep-interval-ms}")
+    public void sweep() {
+        List<String> claimed;
+        do {
+            claimed = claimDue();
+            if (!claimed.isEmpty()) {
+                notifyUndelivered(claimed);
+            }
+        } while (claimed.size() == sweepBatchSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> claimDue() {
+        try {
+            List<String> claimed = stringRedisTemplate.execute(CLAIM_DUE_SCRIPT, List.of(DEADLINES_KEY),
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(sweepBatchSize));
+            return claimed == null ? List.of() : claimed;
+        } catch (Exception e) {
+            log.error("Error while claiming overdue deliveries: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private void notifyUndelivered(List<String> claimed) {
+        // Group recipients by message
+        Map<Long, List<UUID>> recipientsByMessage = new LinkedHashMap<>();
+        for (String member : claimed) {
+            String[] parts = member.split(":");
+            if (parts.length != 2) {
+                log.error("Invalid delivery deadline member: {}", member);
+                continue;
+            }
+            recipientsByMessage.computeIfAbsent(Long.parseLong(parts[0]), id -> new ArrayList<>())
+                    .add(UUID.fromString(parts[1]));
+        }
+
+        // Load all payloads in one round-trip
+        List<Long> messageIds = new ArrayList<>(recipientsByMessage.keySet());
+        List<String> payloads = stringRedisTemplate.opsForValue().multiGet(
+                messageIds.stream().map(id -> PAYLOAD_PREFIX + id).toList());
+
+        Map<Long, MessageDto> messages = new LinkedHashMap<>();
+        for (int i = 0; i < messageIds.size(); i++) {
+            String payload = payloads == null ? null : payloads.get(i);
+            if (payload == null) {
+                log.warn("Payload for message {} expired before its delivery deadline was swept", messageIds.get(i));
+                continue;
+            }
+            try {
+                messages.put(messageIds.get(i), objectMapper.readValue(payload, MessageDto.class));
+            } catch (JsonProcessingException e) {
+                log.error("Invalid delivery payload for message {}", messageIds.get(i), e);
+            }
+        }
+
+        Map<UUID, User> senders = userRepository.findAllById(
+                        messages.values().stream().map(MessageDto::senderId).distinct().toList())
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        messages.forEach((messageId, messageDto) -> {
+            User sender = senders.get(messageDto.senderId());
+            if (sender == null) {
+                log.error("Sender {} of message {} not found", messageDto.senderId(), messageId);
+                return;
+            }
+            List<UUID> recipientIds = recipientsByMessage.get(messageId);
+            log.warn("Message {} not delivered to {} recipient(s) in time, sending notification...",
+                    messageId, recipientIds.size());
+            notificationService.sendNotification(sender, messageDto, recipientIds);
+        });
+    }
+
+    private String member(Long messageId, UUID recipientId) {
+        return messageId + ":" + recipientId;
+    }
+
+    private String pendingKey(Long chatRoomId, UUID recipientId) {
+        return PENDING_PREFIX + chatRoomId + ":" + recipientId;
+    }
+
+    // Epoch microseconds, the precision sent_at is stored with, exact as a sorted set score
+    private static long position(OffsetDateTime sentAt) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, sentAt.toInstant());
     }
 
-    @Async
-    public void markAsDelivered(Long messageId, UUID recipientId) {
-        String key = PREFIX + messageId + ":" + recipientId;
-        redisTemplate.delete(key);
-        log.info("Message {} delivered, removed from Redis", messageId);
+    private byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
     }
 }
@@ -1,18 +1,28 @@
 package com.raul.chat.services.redis;
 
 import com.raul.chat.models.user.TokenType;
+import com.raul.chat.services.utils.TokenUtils;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * Tracks issued tokens in a per-user hash ({@code token:index:{type}:{userId}}) that maps
+ * the token hash to the epoch it was issued in, next to a per-user epoch counter
+ * ({@code token:epoch:{type}:{userId}}). A token is valid while its entry exists and its
+ * epoch is the current one, so revoking all tokens of a user is a single INCR.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -24,59 +34,104 @@ public class JwtTokenTrackService {
     @Value("${jwt.refresh.expiration}")
     Long refreshJwtExpiration;
 
-    static final String JWT_PREFIX = "token:jwt:";
-    static final String REFRESH_PREFIX = "token:refresh:";
-    static final String REVOKED_SUFFIX = ":revoked";
+    static final String INDEX_PREFIX = "token:index:";
+    static final String EPOCH_PREFIX = "token:epoch:";
+    public static final String REVOCATION_CHANNEL = "auth:revocations";
 
     final RedisTemplate<String, Object> redisTemplate;
-
-    public void saveToken(UUID userId, String token, TokenType tokenType) {
-        String key = getTokenKey(userId, token, tokenType);
+    final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Indexes a token under the epoch it was issued in, as returned by the
+     * {@link #revokeAllTokens} call that preceded its issue.
+     */
+    public void saveToken(UUID userId, String token, TokenType tokenType, long epoch) {
+        String indexKey = getIndexKey(userId, tokenType);
+        String epochKey = getEpochKey(userId, tokenType);
         long TTL = getTTLSeconds(tokenType);
 
-        redisTemplate.opsForValue().set(key, token, TTL, TimeUnit.SECONDS);
+        // Both keys live as long as the newest token, so an expired epoch can only reset to 0
+        // once every token stamped with it has expired as well
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSet(raw(indexKey), raw(TokenUtils.sha256Hex(token)), raw(String.valueOf(epoch)));
+            connection.keyCommands().expire(raw(indexKey), TTL);
+            connection.keyCommands().expire(raw(epochKey), TTL);
+            return null;
+        });
         log.info("Saved {} token for user {} in Redis with TTL {} sec", tokenType, userId, TTL);
     }
 
     public boolean isTokenValid(String token, UUID userId, TokenType tokenType) {
-        String key = getTokenKey(userId, token, tokenType);
-        String revokedKey = key + REVOKED_SUFFIX;
+        String indexKey = getIndexKey(userId, tokenType);
+        String epochKey = getEpochKey(userId, tokenType);
+
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hGet(raw(indexKey), raw(TokenUtils.sha256Hex(token)));
+            connection.stringCommands().get(raw(epochKey));
+            return null;
+        });
 
-        Boolean exists = redisTemplate.hasKey(key);
-        Boolean isRevoked = redisTemplate.hasKey(revokedKey);
+        Object tokenEpoch = results.get(0);
+        Object currentEpoch = Objects.requireNonNullElse(results.get(1), "0");
 
-        boolean valid = exists && !isRevoked;
-        log.info("Token {} valid: {}", token, valid);
+        boolean valid = tokenEpoch != null && tokenEpoch.equals(currentEpoch);
+        log.debug("{} token for user {} valid: {}", tokenType, userId, valid);
         return valid;
     }
 
     public void revokeToken(UUID userId, String token, TokenType type) {
-        String key = getTokenKey(userId, token, type);
-        String revokedKey = key + REVOKED_SUFFIX;
-
-        long TTL = redisTemplate.getExpire(key, TimeUnit.SECONDS);
-        if (TTL > 0) {
-            redisTemplate.opsForValue().set(revokedKey, true, TTL, TimeUnit.SECONDS);
-        }
+        String tokenHash = TokenUtils.sha256Hex(token);
+        stringRedisTemplate.opsForHash().delete(getIndexKey(userId, type), tokenHash);
 
+        publishRevocation(TokenRevocation.single(userId, type, tokenHash));
         log.info("Revoked {} token for user {}", type, userId);
     }
 
-    public void revokeAllTokens(UUID userId, TokenType tokenType) {
-        String prefix = (tokenType == TokenType.REFRESH_TOKEN) ? REFRESH_PREFIX : JWT_PREFIX;
-        Set<String> keys = redisTemplate.keys(prefix + userId + ":*");
+    /**
+     * Revokes every token of the given type and returns the user's new epoch.
+     */
+    public long revokeAllTokens(UUID userId, TokenType tokenType) {
+        String indexKey = getIndexKey(userId, tokenType);
+        String epochKey = getEpochKey(userId, tokenType);
+        long TTL = getTTLSeconds(tokenType);
+
+        // Bumping the epoch invalidates every token issued so far; the stale index entries
+        // are unlinked in the background so the hash does not grow across logins
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().incr(raw(epochKey));
+            connection.keyCommands().expire(raw(epochKey), TTL);
+            connection.keyCommands().unlink(raw(indexKey));
+            return null;
+        });
+        log.info("Revoked all {} tokens for user {}", tokenType, userId);
+        long epoch = (Long) results.get(0);
+        // Tokens issued from now on carry the new epoch and are not covered by this revocation
+        publishRevocation(TokenRevocation.allBefore(userId, tokenType, epoch));
+        return epoch;
+    }
 
-        if (!keys.isEmpty()) {
-            for (String key : keys) {
-                redisTemplate.opsForValue().set(key + REVOKED_SUFFIX, true, 1, TimeUnit.HOURS);
-            }
-            log.info("Revoked all tokens for user {}", userId);
+    private void publishRevocation(TokenRevocation revocation) {
+        try {
+            redisTemplate.convertAndSend(REVOCATION_CHANNEL, revocation.encode());
+        } catch (Exception e) {
+            log.error("Error while publishing token revocation for user {}: {}", revocation.userId(), e.getMessage());
         }
     }
 
-    private String getTokenKey(UUID userId, String token, TokenType type) {
-        String prefix = (type == TokenType.REFRESH_TOKEN) ? REFRESH_PREFIX : JWT_PREFIX;
-        return prefix + userId + ":" + token;
+    private String getIndexKey(UUID userId, TokenType type) {
+        return INDEX_PREFIX + typeSegment(type) + ":" + userId;
+    }
+
+    static String getEpochKey(UUID userId, TokenType type) {
+        return EPOCH_PREFIX + typeSegment(type) + ":" + userId;
+    }
+
+    private static String typeSegment(TokenType type) {
+        return (type == TokenType.REFRESH_TOKEN) ? "refresh" : "jwt";
+    }
+
+    private byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
     }
 
     private long getTTLSeconds(TokenType tokenType) {
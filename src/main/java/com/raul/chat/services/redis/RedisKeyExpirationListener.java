@@ -1,25 +1,18 @@
 package com.raul.chat.services.redis;
 
-import com.raul.chat.dtos.chat.MessageDto;
-import com.raul.chat.models.chat.MessageRecipient;
+import com.raul.chat.configs.AsyncConfig;
 import com.raul.chat.models.user.Status;
-import com.raul.chat.models.user.User;
 import com.raul.chat.repositories.auth.UserRepository;
-import com.raul.chat.repositories.chat.MessageRecipientRepository;
-import com.raul.chat.services.chat.NotificationService;
-import com.raul.chat.services.utils.UserUtils;
-import jakarta.persistence.EntityNotFoundException;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.connection.Message;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.KeyExpirationEventMessageListener;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.UUID;
 
 @Service
@@ -27,82 +20,36 @@ import java.util.UUID;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class RedisKeyExpirationListener extends KeyExpirationEventMessageListener {
 
-    NotificationService notificationService;
-    MessageRecipientRepository messageRecipientRepository;
     UserRepository userRepository;
-    RedisTemplate<String, Object> redisTemplate;
-    UserUtils userUtils;
+    StringRedisTemplate stringRedisTemplate;
 
 
     public RedisKeyExpirationListener(RedisMessageListenerContainer listenerContainer,
-                                      NotificationService notificationService,
-                                      MessageRecipientRepository messageRecipientRepository,
                                       UserRepository userRepository,
-                                      RedisTemplate<String, Object> redisTemplate,
-                                      UserUtils userUtils) {
+                                      StringRedisTemplate stringRedisTemplate) {
         super(listenerContainer);
-        this.notificationService = notificationService;
-        this.messageRecipientRepository = messageRecipientRepository;
         this.userRepository = userRepository;
-        this.redisTemplate = redisTemplate;
-        this.userUtils = userUtils;
+        this.stringRedisTemplate = stringRedisTemplate;
     }
 
-    @Async
+    @Async(AsyncConfig.BACKGROUND_EXECUTOR)
     @Override
     public void onMessage(Message message, byte[] pattern) {
         String expiredKey = message.toString();
         log.info("Redis key expired: {}", expiredKey);
 
-        // MESSAGE DELIVERY
-        if (expiredKey.startsWith("message:delivery:")) {
-            handleMessageDeliveryExpiration(expiredKey);
-        }
-
         // USER STATUS
         if (expiredKey.startsWith("user:status:")) {
             handleUserStatusExpiration(expiredKey);
         }
     }
 
-    private void handleMessageDeliveryExpiration(String expiredKey) {
-        String keySuffix = expiredKey.replace("message:delivery:", "");
-        String[] parts = keySuffix.split(":");
-        if (parts.length != 2) {
-            log.error("Invalid Redis key format: {}", expiredKey);
-            return;
-        }
-
-        UUID recipientId = UUID.fromString(parts[1]);
-
-        MessageDto messageDto = (MessageDto) redisTemplate.opsForValue().get(expiredKey);
-        if (messageDto == null) {
-            log.warn("MessageDto not found in Redis for key {}", expiredKey);
-            return;
-        }
-
-        User sender = userRepository.findById(messageDto.senderId())
-                .orElseThrow(() -> userUtils.throwUserNotFoundException("ID", messageDto.senderId().toString()));
-
-        MessageRecipient recipient = messageRecipientRepository.findByRecipient(recipientId)
-                .orElseThrow(() -> new EntityNotFoundException("Recipient not found in Redis for key " + expiredKey));
-
-        if (recipient == null) {
-            log.warn("Recipient {} not found for message {}", recipientId, messageDto.messageId());
-            return;
-        }
-
-        if (expiredKey.startsWith("message:delivery:")) {
-            String messageId = expiredKey.replace("message:delivery:", "");
-            log.warn("Message {} not delivered within TTL, sending notification...", messageId);
-            notificationService.sendNotification(sender, messageDto, List.of(recipient));
-        }
-    }
-
     private void handleUserStatusExpiration(String expiredKey) {
         String userIdStr = expiredKey.replace("user:status:", "");
         try {
             UUID userId = UUID.fromString(userIdStr);
+            // No node refreshed the user any more, drop it from the online set as well
+            stringRedisTemplate.opsForSet().remove("online:users", userIdStr);
             userRepository.findById(userId).ifPresent(user -> {
                 user.setStatus(Status.OFFLINE);
                 userRepository.save(user);
@@ -0,0 +1,82 @@
+package com.raul.chat.services.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.raul.chat.models.user.TokenType;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Node-local copy of the per-user token epochs kept by {@link JwtTokenTrackService}.
+ * Entries are dropped on every node when a user's tokens are revoked, so in
+ * {@code EPOCH} validation mode a token check needs no Redis round-trip.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TokenEpochCache implements MessageListener {
+
+    StringRedisTemplate stringRedisTemplate;
+    RedisTemplate<String, Object> redisTemplate;
+    RedisMessageListenerContainer listenerContainer;
+    Cache<String, Long> epochs;
+
+    public TokenEpochCache(StringRedisTemplate stringRedisTemplate,
+                           RedisTemplate<String, Object> redisTemplate,
+                           RedisMessageListenerContainer listenerContainer,
+                           @Value("${jwt.validation.epoch-cache.max-size}") long maxSize,
+                           @Value("${jwt.validation.epoch-cache.ttl-seconds}") long ttlSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.epochs = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(JwtTokenTrackService.REVOCATION_CHANNEL));
+    }
+
+    public long currentEpoch(UUID userId, TokenType tokenType) {
+        return epochs.get(JwtTokenTrackService.getEpochKey(userId, tokenType), key -> {
+            String epoch = stringRedisTemplate.opsForValue().get(key);
+            return epoch == null ? 0L : Long.parseLong(epoch);
+        });
+    }
+
+    public void evict(UUID userId, TokenType tokenType) {
+        epochs.invalidate(JwtTokenTrackService.getEpochKey(userId, tokenType));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object payload = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (payload == null) return;
+
+        try {
+            TokenRevocation revocation = TokenRevocation.decode(payload.toString());
+            // Revoking a single token leaves the epoch untouched
+            if (revocation.epoch() != null) {
+                evict(revocation.userId(), revocation.tokenType());
+            }
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid token revocation message: {}", payload);
+        }
+    }
+}
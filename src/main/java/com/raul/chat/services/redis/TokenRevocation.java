@@ -0,0 +1,56 @@
+package com.raul.chat.services.redis;
+
+import com.raul.chat.models.user.TokenType;
+import jakarta.annotation.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Revocation broadcast on {@link JwtTokenTrackService#REVOCATION_CHANNEL}. Either every
+ * token of the type stamped with an epoch below {@code epoch} is revoked, or the single
+ * token whose SHA-256 hash is {@code tokenHash}.
+ */
+public record TokenRevocation(
+        UUID userId,
+        TokenType tokenType,
+        @Nullable Long epoch,
+        @Nullable String tokenHash
+) {
+    private static final String SEPARATOR = "|";
+
+    public static TokenRevocation allBefore(UUID userId, TokenType tokenType, long epoch) {
+        return new TokenRevocation(userId, tokenType, epoch, null);
+    }
+
+    public static TokenRevocation single(UUID userId, TokenType tokenType, String tokenHash) {
+        return new TokenRevocation(userId, tokenType, null, tokenHash);
+    }
+
+    /**
+     * Whether a token of the user stamped with {@code tokenEpoch} and hashed to
+     * {@code tokenHash} is covered. Tokens without an epoch predate every revocation.
+     */
+    public boolean covers(@Nullable Long tokenEpoch, String tokenHash) {
+        if (this.tokenHash != null) return this.tokenHash.equals(tokenHash);
+        return epoch != null && (tokenEpoch == null || tokenEpoch < epoch);
+    }
+
+    public String encode() {
+        return userId + SEPARATOR + tokenType.name() + SEPARATOR
+                + (epoch == null ? "" : epoch) + SEPARATOR
+                + (tokenHash == null ? "" : tokenHash);
+    }
+
+    public static TokenRevocation decode(String value) {
+        String[] parts = value.split("\\|", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid token revocation: " + value);
+        }
+        return new TokenRevocation(
+                UUID.fromString(parts[0]),
+                TokenType.valueOf(parts[1]),
+                parts[2].isEmpty() ? null : Long.parseLong(parts[2]),
+                parts[3].isEmpty() ? null : parts[3]
+        );
+    }
+}
@@ -0,0 +1,26 @@
+package com.raul.chat.benchmarks;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this package from the test classpath. Skipped unless
+ * started explicitly, e.g.
+ * {@code mvn test -Dtest=BenchmarkRunnerTest -Dbenchmarks=true -Dbenchmarks.include=JwtVerify}.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class BenchmarkRunnerTest {
+
+    @Test
+    void runBenchmarks() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(System.getProperty("benchmarks.include", BenchmarkRunnerTest.class.getPackageName()))
+                .addProfiler("gc")
+                .shouldFailOnError(true)
+                .build())
+                .run();
+    }
+}
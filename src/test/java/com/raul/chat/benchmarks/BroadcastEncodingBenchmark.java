@@ -0,0 +1,89 @@
+package com.raul.chat.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.raul.chat.configs.BrokerMode;
+import com.raul.chat.configs.StompPayloadCodec;
+import com.raul.chat.dtos.auth.UserDto;
+import com.raul.chat.dtos.chat.NotificationDto;
+import com.raul.chat.models.user.Role;
+import com.raul.chat.models.user.Status;
+import com.raul.chat.services.chat.EncodedMessageSender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Fans one notification out to every member of a room, once converting the payload per
+ * recipient as {@code convertAndSend} does and once through {@link EncodedMessageSender}.
+ * Run with the gc profiler: with encode-once the serialization share of
+ * {@code gc.alloc.rate.norm} stays flat as {@code roomSize} grows, only per-send headers remain.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastEncodingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int roomSize;
+
+    SimpMessagingTemplate messagingTemplate;
+    EncodedMessageSender encodedMessageSender;
+    NotificationDto notification;
+    List<String> destinations;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+
+        // The broker is out of scope, sends end at a channel that accepts everything
+        MessageChannel channel = (message, timeout) -> true;
+        messagingTemplate = new SimpMessagingTemplate(channel);
+        StompPayloadCodec codec = new StompPayloadCodec(objectMapper, new SimpleMeterRegistry(), BrokerMode.SIMPLE,
+                false, 1024, 6);
+        messagingTemplate.setMessageConverter(codec.jsonConverter());
+        encodedMessageSender = new EncodedMessageSender(messagingTemplate, objectMapper);
+
+        notification = new NotificationDto(
+                new UserDto(UUID.randomUUID(), "Alice", "Sender", "alice@chat", Role.ROLE_USER, null, Status.ONLINE),
+                "A message of typical length that is pushed to every member of the room");
+        destinations = IntStream.range(0, roomSize)
+                .mapToObj(i -> "/user/" + UUID.randomUUID() + "/queue/notifications")
+                .toList();
+    }
+
+    @Benchmark
+    public void convertPerRecipient() {
+        for (String destination : destinations) {
+            messagingTemplate.convertAndSend(destination, notification);
+        }
+    }
+
+    @Benchmark
+    public void encodeOnce() {
+        EncodedMessageSender.EncodedPayload payload = encodedMessageSender.encode(notification);
+        for (String destination : destinations) {
+            encodedMessageSender.send(destination, payload);
+        }
+    }
+}
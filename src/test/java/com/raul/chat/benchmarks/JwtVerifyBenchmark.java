@@ -0,0 +1,86 @@
+package com.raul.chat.benchmarks;
+
+import com.raul.chat.services.auth.JwtService;
+import com.raul.chat.services.auth.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claims extraction per request: the former path decoded the key, built a parser and
+ * verified the token once per claim, {@link JwtService#verify} does it once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtVerifyBenchmark {
+    static final String SECRET = "ZmFrZS1iZW5jaG1hcmstc2VjcmV0LWtleS13aXRoLWVub3VnaC1ieXRlcy0xMjM0NTY3ODk=";
+
+    JwtService jwtService;
+    String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService(null, null);
+        ReflectionTestUtils.setField(jwtService, "secretKey", SECRET);
+        jwtService.init();
+
+        token = Jwts.builder()
+                .claim("userId", UUID.randomUUID().toString())
+                .claim("epoch", 3L)
+                .subject("user@chat")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(signInKey(), Jwts.SIG.HS256)
+                .compact();
+    }
+
+    @Benchmark
+    public void parsePerClaim(Blackhole blackhole) {
+        blackhole.consume(extractAllClaims(token).getSubject());
+        blackhole.consume(extractAllClaims(token).get("userId", String.class));
+        blackhole.consume(extractAllClaims(token).getExpiration().before(new Date()));
+    }
+
+    @Benchmark
+    public void verifyOnce(Blackhole blackhole) {
+        VerifiedToken verified = jwtService.verify(token);
+        blackhole.consume(verified.username());
+        blackhole.consume(verified.userId());
+        blackhole.consume(verified.isExpired());
+    }
+
+    // The removed per-call path, kept here as the baseline
+    private static Claims extractAllClaims(String token) {
+        return Jwts.parser()
+                .verifyWith(signInKey())
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+
+    private static SecretKey signInKey() {
+        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+    }
+}
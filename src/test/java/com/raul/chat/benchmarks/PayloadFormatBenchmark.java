@@ -0,0 +1,90 @@
+package com.raul.chat.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.raul.chat.configs.StompPayloadCodec;
+import com.raul.chat.dtos.chat.MessageDto;
+import com.raul.chat.dtos.chat.RecipientDto;
+import com.raul.chat.models.chat.MessageStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Encodes and decodes one message as JSON with the application mapper and as CBOR with
+ * the mapper CBOR sessions receive.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadFormatBenchmark {
+
+    @Param({"2", "50"})
+    int recipientCount;
+
+    ObjectMapper jsonMapper;
+    CBORMapper cborMapper;
+    MessageDto message;
+    byte[] json;
+    byte[] cbor;
+
+    @Setup
+    public void setUp() throws IOException {
+        jsonMapper = new ObjectMapper();
+        jsonMapper.registerModule(new JavaTimeModule());
+        cborMapper = StompPayloadCodec.cborMapper();
+
+        OffsetDateTime sentAt = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 123_000_000, ZoneOffset.UTC);
+        message = new MessageDto(
+                1_000_000L,
+                "A message of typical length that is pushed to every member of the room",
+                UUID.randomUUID(),
+                42L,
+                IntStream.range(0, recipientCount)
+                        .mapToObj(i -> new RecipientDto(UUID.randomUUID(), MessageStatus.DELIVERED,
+                                sentAt.plusSeconds(1), null))
+                        .toList(),
+                sentAt);
+        json = jsonMapper.writeValueAsBytes(message);
+        cbor = cborMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return jsonMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] encodeCbor() throws IOException {
+        return cborMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public MessageDto decodeJson() throws IOException {
+        return jsonMapper.readValue(json, MessageDto.class);
+    }
+
+    @Benchmark
+    public MessageDto decodeCbor() throws IOException {
+        return cborMapper.readValue(cbor, MessageDto.class);
+    }
+}
@@ -0,0 +1,53 @@
+package com.raul.chat.configs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StompFrameTracerTest {
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    final StompFrameTracer tracer = new StompFrameTracer(meterRegistry, false, 0, List.of(), Set.of());
+
+    @Test
+    void knownDestinationsAreTaggedWithoutIds() {
+        tracer.record(StompFrameTracer.Direction.INBOUND, frame("/app/rooms/42/read-up-to"));
+        tracer.record(StompFrameTracer.Direction.OUTBOUND, frame("/topic/chat-room.7.receipts"));
+        tracer.record(StompFrameTracer.Direction.OUTBOUND, frame("/queue/messages-user3f2a"));
+
+        assertThat(destinations()).containsExactlyInAnyOrder(
+                "/app/rooms/{id}/read-up-to", "/topic/chat-room.{id}.receipts", "/queue/messages-user{session}");
+    }
+
+    @Test
+    void unknownDestinationsShareOneTag() {
+        for (int i = 0; i < 100; i++) {
+            tracer.record(StompFrameTracer.Direction.INBOUND, frame("/app/random-" + Integer.toHexString(i * 7919)));
+            tracer.record(StompFrameTracer.Direction.INBOUND, frame("/topic/anything.x" + i));
+        }
+
+        assertThat(destinations()).containsExactly("other");
+        Counter frames = meterRegistry.get("chat.stomp.frames").tag("destination", "other").counter();
+        assertThat(frames.count()).isEqualTo(200);
+    }
+
+    private List<String> destinations() {
+        return meterRegistry.get("chat.stomp.frames").counters().stream()
+                .map(counter -> counter.getId().getTag("destination"))
+                .toList();
+    }
+
+    private static Message<byte[]> frame(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[]{1, 2, 3}, accessor.getMessageHeaders());
+    }
+}
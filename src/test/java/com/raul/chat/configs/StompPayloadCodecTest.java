@@ -0,0 +1,99 @@
+package com.raul.chat.configs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.raul.chat.dtos.chat.ReceiptEventDto;
+import com.raul.chat.models.chat.MessageStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StompPayloadCodecTest {
+    static final OffsetDateTime TIMESTAMP = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 123_000_000, ZoneOffset.UTC);
+
+    ObjectMapper objectMapper;
+    StompPayloadCodec codec;
+    ReceiptEventDto receipt;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        codec = new StompPayloadCodec(objectMapper, new SimpleMeterRegistry(), BrokerMode.SIMPLE, false, 1024, 6);
+        receipt = new ReceiptEventDto(1L, UUID.randomUUID(), MessageStatus.READ, TIMESTAMP);
+    }
+
+    @Test
+    void convertedPayloadReachesCborSessionWithNumericTimestamps() throws IOException {
+        connect("cbor-session", "cbor");
+
+        Message<?> encoded = codec.encodeForSession(converted(receipt, "cbor-session"));
+
+        assertThat(StompHeaderAccessor.wrap(encoded).getFirstNativeHeader(StompPayloadCodec.FORMAT_HEADER))
+                .isEqualTo("cbor");
+        JsonNode tree = StompPayloadCodec.cborMapper().readTree((byte[]) encoded.getPayload());
+        assertThat(tree.get("timestamp").isIntegralNumber()).isTrue();
+        assertThat(tree.get("timestamp").asLong()).isEqualTo(TIMESTAMP.toInstant().toEpochMilli());
+        assertThat(StompPayloadCodec.cborMapper().readValue((byte[]) encoded.getPayload(), ReceiptEventDto.class)
+                .timestamp().toInstant()).isEqualTo(TIMESTAMP.toInstant());
+    }
+
+    @Test
+    void jsonSessionKeepsTheConvertedMessage() {
+        Message<?> message = converted(receipt, "json-session");
+
+        assertThat(codec.encodeForSession(message)).isSameAs(message);
+    }
+
+    @Test
+    void payloadWithoutSourceStaysJsonWithoutFormatHeader() throws IOException {
+        connect("cbor-session", "cbor");
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("cbor-session");
+        Message<byte[]> message = MessageBuilder.createMessage(objectMapper.writeValueAsBytes(receipt),
+                accessor.getMessageHeaders());
+
+        assertThat(codec.encodeForSession(message)).isSameAs(message);
+    }
+
+    @Test
+    void cborIsNotNegotiatedBehindTheRelay() {
+        codec = new StompPayloadCodec(objectMapper, new SimpleMeterRegistry(), BrokerMode.RELAY, false, 1024, 6);
+        connect("cbor-session", "cbor");
+        Message<?> message = converted(receipt, "cbor-session");
+
+        assertThat(codec.encodeForSession(message)).isSameAs(message);
+    }
+
+    private void connect(String sessionId, String format) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(new HashMap<>(Map.of(StompPayloadCodec.NATIVE_TRANSPORT_ATTRIBUTE, true)));
+        accessor.setNativeHeader(StompPayloadCodec.FORMAT_HEADER, format);
+        codec.negotiate(accessor);
+    }
+
+    // As convertAndSend builds it, the broker only adds the target session
+    private Message<?> converted(Object payload, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        return codec.jsonConverter().toMessage(payload, accessor.getMessageHeaders());
+    }
+}
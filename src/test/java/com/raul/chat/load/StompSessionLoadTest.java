@@ -0,0 +1,253 @@
+package com.raul.chat.load;
+
+import com.raul.chat.ChatDemoApplication;
+import com.raul.chat.models.user.User;
+import com.raul.chat.repositories.auth.UserRepository;
+import com.raul.chat.services.auth.JwtService;
+import com.raul.chat.support.ChatTestContainers;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Holds {@code load-tests.sessions} STOMP sessions open against one node and measures two
+ * workloads that block on Redis and Postgres: every session issues {@code load-tests.requests}
+ * directory requests, then sends as many chat messages to its partner session, which run in
+ * order on the pair's dispatch lane. Both are measured on platform threads and, on a Java 21+
+ * runtime, on virtual threads, e.g.
+ * {@code mvn test -Dtest=StompSessionLoadTest -Dload-tests=true -Dload-tests.sessions=10000}.
+ * The code targets Java 17, so the virtual-thread run needs the tests started with a 21+ JDK
+ * and is reported as skipped otherwise.
+ */
+@EnabledIfSystemProperty(named = "load-tests", matches = "true")
+@Testcontainers
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@Slf4j
+class StompSessionLoadTest {
+    static final int SESSIONS = Integer.getInteger("load-tests.sessions", 10_000);
+    static final int REQUESTS_PER_SESSION = Integer.getInteger("load-tests.requests", 5);
+    static final int CONNECTS_IN_FLIGHT = 200;
+    static final byte[] DIRECTORY_REQUEST = "{}".getBytes(StandardCharsets.UTF_8);
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = ChatTestContainers.postgres();
+
+    @Container
+    static final GenericContainer<?> REDIS = ChatTestContainers.redis();
+
+    static Throughput platform;
+
+    @BeforeAll
+    static void seedUsers() throws Exception {
+        try (Connection connection = DriverManager.getConnection(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO users (id, first_name, last_name, email, password, is_authenticated) " +
+                              "SELECT gen_random_uuid(), 'Load', 'User ' || n, 'load-' || n || '@chat', 'n/a', TRUE " +
+                              "FROM generate_series(1, " + SESSIONS + ") n");
+        }
+    }
+
+    @Test
+    @Order(1)
+    void platformThreads() throws Exception {
+        platform = run(false);
+        log.info("platform threads, {} sessions: {} directory replies/s, {} messages/s",
+                SESSIONS, Math.round(platform.directory()), Math.round(platform.messages()));
+    }
+
+    @Test
+    @Order(2)
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualThreads() throws Exception {
+        Throughput virtual = run(true);
+        log.info("virtual threads, {} sessions: {} directory replies/s, {} messages/s",
+                SESSIONS, Math.round(virtual.directory()), Math.round(virtual.messages()));
+        if (platform != null) {
+            log.info("virtual / platform: directory {}x, messages {}x",
+                    String.format("%.2f", virtual.directory() / platform.directory()),
+                    String.format("%.2f", virtual.messages() / platform.messages()));
+        }
+    }
+
+    private Throughput run(boolean virtualThreads) throws Exception {
+        Map<String, Object> properties = ChatTestContainers.properties(POSTGRES, REDIS);
+        properties.put("chat.websocket.channels.virtual-threads", virtualThreads);
+        properties.put("chat.async.virtual-threads", virtualThreads);
+        properties.put("server.tomcat.max-connections", SESSIONS + 1_000);
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ChatDemoApplication.class)
+                .properties(properties)
+                .run()) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            List<User> users = loadUsers(context);
+            JwtService jwtService = context.getBean(JwtService.class);
+            List<String> tokens = users.stream().map(jwtService::generateToken).toList();
+
+            // Only paired sessions send, each message reaches its partner's single session
+            int senders = users.size() / 2 * 2;
+            CountDownLatch directoryReplies = new CountDownLatch(users.size() * REQUESTS_PER_SESSION);
+            CountDownLatch messages = new CountDownLatch(senders * REQUESTS_PER_SESSION);
+
+            WebSocketStompClient stompClient = stompClient();
+            List<StompSession> sessions = connectAll(stompClient, "ws://localhost:" + port + "/ws-native",
+                    tokens, directoryReplies, messages);
+            try {
+                double directory = measure(directoryReplies, () -> {
+                    StompHeaders send = jsonSend("/app/online-users");
+                    for (int i = 0; i < REQUESTS_PER_SESSION; i++) {
+                        sessions.forEach(session -> session.send(send, DIRECTORY_REQUEST));
+                    }
+                });
+                double sent = measure(messages, () -> {
+                    StompHeaders send = jsonSend("/app/chat.send");
+                    for (int i = 0; i < REQUESTS_PER_SESSION; i++) {
+                        for (int s = 0; s < senders; s++) {
+                            User sender = users.get(s);
+                            User partner = users.get(s ^ 1);
+                            sessions.get(s).send(send, chatMessage(sender, partner, i));
+                        }
+                    }
+                });
+                return new Throughput(directory, sent);
+            } finally {
+                sessions.forEach(StompSession::disconnect);
+                stompClient.stop();
+            }
+        }
+    }
+
+    private static double measure(CountDownLatch replies, Runnable workload) throws InterruptedException {
+        long expected = replies.getCount();
+        long start = System.nanoTime();
+        workload.run();
+        boolean completed = replies.await(5, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertThat(completed)
+                .as("%d of %d replies missing", replies.getCount(), expected)
+                .isTrue();
+        return expected / seconds;
+    }
+
+    private static StompHeaders jsonSend(String destination) {
+        StompHeaders send = new StompHeaders();
+        send.setDestination(destination);
+        send.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return send;
+    }
+
+    private static byte[] chatMessage(User sender, User recipient, int sequence) {
+        return ("{\"content\":\"Load message " + sequence + "\"," +
+                "\"senderId\":\"" + sender.getId() + "\"," +
+                "\"recipientId\":\"" + recipient.getId() + "\"," +
+                "\"clientMessageId\":\"load-" + sender.getId() + "-" + sequence + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<User> loadUsers(ConfigurableApplicationContext context) {
+        return context.getBean(UserRepository.class).findAll().stream()
+                .filter(user -> user.getEmail().startsWith("load-"))
+                .toList();
+    }
+
+    private static WebSocketStompClient stompClient() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        executor.setThreadNamePrefix("load-client-");
+        executor.initialize();
+
+        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+        webSocketClient.setTaskExecutor(executor);
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(webSocketClient);
+        stompClient.setMessageConverter(new ByteArrayMessageConverter());
+        stompClient.setDefaultHeartbeat(new long[]{0, 0});
+        return stompClient;
+    }
+
+    private static List<StompSession> connectAll(WebSocketStompClient stompClient, String url,
+                                                 List<String> tokens, CountDownLatch directoryReplies,
+                                                 CountDownLatch messages) throws Exception {
+        Semaphore inFlight = new Semaphore(CONNECTS_IN_FLIGHT);
+        List<CompletableFuture<StompSession>> connects = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            inFlight.acquire();
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("Authorization", "Bearer " + token);
+
+            CompletableFuture<StompSession> connect = stompClient.connectAsync(url, new WebSocketHttpHeaders(),
+                    connectHeaders, new StompSessionHandlerAdapter() {
+                        @Override
+                        public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+                            session.subscribe("/user/queue/online-users", new CountingHandler(directoryReplies));
+                            session.subscribe("/user/queue/messages", new CountingHandler(messages));
+                        }
+                    });
+            connect.whenComplete((session, error) -> inFlight.release());
+            connects.add(connect);
+        }
+
+        List<StompSession> sessions = new ArrayList<>(connects.size());
+        for (CompletableFuture<StompSession> connect : connects) {
+            sessions.add(connect.get(1, TimeUnit.MINUTES));
+        }
+        // Subscriptions are sent right after CONNECTED, let the last ones reach the broker
+        Thread.sleep(1_000);
+        return sessions;
+    }
+
+    private record Throughput(double directory, double messages) {
+    }
+
+    private record CountingHandler(CountDownLatch replies) implements StompFrameHandler {
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return byte[].class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            replies.countDown();
+        }
+    }
+}
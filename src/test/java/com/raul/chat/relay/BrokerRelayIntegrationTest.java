@@ -0,0 +1,171 @@
+package com.raul.chat.relay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.raul.chat.ChatDemoApplication;
+import com.raul.chat.dtos.chat.NewMessageDto;
+import com.raul.chat.models.user.User;
+import com.raul.chat.repositories.auth.UserRepository;
+import com.raul.chat.services.auth.JwtService;
+import com.raul.chat.support.ChatTestContainers;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application nodes in {@code RELAY} mode sharing one RabbitMQ STOMP broker, Postgres
+ * and Redis: a personal message sent through node A reaches the recipient's session on node B.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class BrokerRelayIntegrationTest {
+    static final String BROKER_USER = "chat";
+    static final String BROKER_PASSWORD = "chat";
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = ChatTestContainers.postgres();
+
+    @Container
+    static final GenericContainer<?> REDIS = ChatTestContainers.redis();
+
+    @Container
+    static final GenericContainer<?> RABBITMQ = new GenericContainer<>("rabbitmq:3.13")
+            .withCopyToContainer(Transferable.of("[rabbitmq_stomp]."), "/etc/rabbitmq/enabled_plugins")
+            .withEnv("RABBITMQ_DEFAULT_USER", BROKER_USER)
+            .withEnv("RABBITMQ_DEFAULT_PASS", BROKER_PASSWORD)
+            .withExposedPorts(61613)
+            .waitingFor(Wait.forLogMessage(".*Server startup complete.*", 1));
+
+    static ConfigurableApplicationContext nodeA;
+    static ConfigurableApplicationContext nodeB;
+
+    final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    static void startNodes() throws Exception {
+        try (Connection connection = DriverManager.getConnection(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO users (id, first_name, last_name, email, password, is_authenticated) VALUES " +
+                              "(gen_random_uuid(), 'Alice', 'Relay', 'alice@chat', 'n/a', TRUE), " +
+                              "(gen_random_uuid(), 'Bob', 'Relay', 'bob@chat', 'n/a', TRUE)");
+        }
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (nodeA != null) nodeA.close();
+        if (nodeB != null) nodeB.close();
+    }
+
+    @Test
+    void personalMessageCrossesNodes() throws Exception {
+        User alice = user(nodeA, "alice@chat");
+        User bob = user(nodeB, "bob@chat");
+
+        BlockingQueue<byte[]> bobInbox = new LinkedBlockingQueue<>();
+        StompSession bobSession = connect(nodeB, token(nodeB, bob));
+        CountDownLatch subscribed = new CountDownLatch(1);
+        bobSession.setAutoReceipt(true);
+        bobSession.subscribe("/user/queue/messages", new CollectingHandler(bobInbox))
+                .addReceiptTask(subscribed::countDown);
+        assertThat(subscribed.await(10, TimeUnit.SECONDS)).as("broker confirmed the subscription").isTrue();
+
+        StompSession aliceSession = connect(nodeA, token(nodeA, alice));
+        StompHeaders send = new StompHeaders();
+        send.setDestination("/app/chat.send");
+        send.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        aliceSession.send(send, objectMapper.writeValueAsBytes(
+                new NewMessageDto("hello from node A", alice.getId(), bob.getId(), null, UUID.randomUUID().toString())));
+
+        byte[] received = bobInbox.poll(10, TimeUnit.SECONDS);
+        assertThat(received).as("message delivered on node B").isNotNull();
+        JsonNode message = objectMapper.readTree(received);
+        assertThat(message.get("content").asText()).isEqualTo("hello from node A");
+        assertThat(message.get("senderId").asText()).isEqualTo(alice.getId().toString());
+
+        aliceSession.disconnect();
+        bobSession.disconnect();
+    }
+
+    private static ConfigurableApplicationContext startNode() {
+        Map<String, Object> properties = ChatTestContainers.properties(POSTGRES, REDIS);
+        properties.put("chat.websocket.broker.mode", "RELAY");
+        properties.put("chat.websocket.broker.relay.host", RABBITMQ.getHost());
+        properties.put("chat.websocket.broker.relay.port", RABBITMQ.getMappedPort(61613));
+        properties.put("chat.websocket.broker.relay.login", BROKER_USER);
+        properties.put("chat.websocket.broker.relay.passcode", BROKER_PASSWORD);
+        // Both nodes share one JVM, keep their JMX and actuator registrations apart
+        properties.put("spring.jmx.enabled", false);
+        return new SpringApplicationBuilder(ChatDemoApplication.class)
+                .properties(properties)
+                .run();
+    }
+
+    private static User user(ConfigurableApplicationContext node, String email) {
+        return node.getBean(UserRepository.class).findByEmail(email).orElseThrow();
+    }
+
+    private static String token(ConfigurableApplicationContext node, User user) {
+        return node.getBean(JwtService.class).generateToken(user);
+    }
+
+    private static StompSession connect(ConfigurableApplicationContext node, String token) throws Exception {
+        int port = ((WebServerApplicationContext) node).getWebServer().getPort();
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new ByteArrayMessageConverter());
+        stompClient.setDefaultHeartbeat(new long[]{0, 0});
+
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("Authorization", "Bearer " + token);
+        return stompClient.connectAsync("ws://localhost:" + port + "/ws-native", new WebSocketHttpHeaders(),
+                        connectHeaders, new StompSessionHandlerAdapter() {
+                        })
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    private record CollectingHandler(BlockingQueue<byte[]> inbox) implements StompFrameHandler {
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return byte[].class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            inbox.add((byte[]) payload);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.raul.chat.repositories.chat;
+
+import com.raul.chat.dtos.chat.MessageView;
+import com.raul.chat.models.chat.ChatRoom;
+import com.raul.chat.models.chat.ChatRoomType;
+import com.raul.chat.models.chat.Message;
+import com.raul.chat.models.user.Role;
+import com.raul.chat.models.user.Status;
+import com.raul.chat.models.user.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+class MessageRepositoryTest {
+    static final OffsetDateTime T0 = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    User sender;
+    ChatRoom room;
+    ChatRoom otherRoom;
+
+    @BeforeEach
+    void setUp() {
+        sender = entityManager.persist(user("sender@chat"));
+        room = entityManager.persist(room(sender));
+        otherRoom = entityManager.persist(room(sender));
+
+        // Ids deliberately disagree with send order: 1..3 share T0, 10 precedes 7
+        persistMessage(1L, room, T0);
+        persistMessage(2L, room, T0);
+        persistMessage(3L, room, T0);
+        persistMessage(10L, room, T0.plusSeconds(1));
+        persistMessage(7L, room, T0.plusSeconds(2));
+        persistMessage(4L, otherRoom, T0.plusSeconds(1));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void pageAfterStartsStrictlyAfterCursorRow() {
+        List<MessageView> page = messageRepository.findPageAfter(room.getId(), T0, 2L, Limit.of(10));
+
+        assertThat(page).extracting(MessageView::messageId).containsExactly(3L, 10L, 7L);
+    }
+
+    @Test
+    void pageBeforeReturnsNewestFirstAndExcludesCursorRow() {
+        List<MessageView> page = messageRepository.findPageBefore(room.getId(), T0.plusSeconds(1), 10L,
+                Limit.of(10));
+
+        assertThat(page).extracting(MessageView::messageId).containsExactly(3L, 2L, 1L);
+    }
+
+    @Test
+    void latestPageIsOrderedBySentAtThenId() {
+        List<MessageView> page = messageRepository.findLatestPage(room.getId(), Limit.of(2));
+
+        assertThat(page).extracting(MessageView::messageId).containsExactly(7L, 10L);
+    }
+
+    @Test
+    void walkingForwardVisitsEveryMessageOnce() {
+        List<Long> visited = new ArrayList<>();
+        OffsetDateTime sentAt = OffsetDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        long messageId = 0L;
+
+        List<MessageView> page;
+        do {
+            page = messageRepository.findPageAfter(room.getId(), sentAt, messageId, Limit.of(2));
+            page.forEach(message -> visited.add(message.messageId()));
+            if (!page.isEmpty()) {
+                MessageView edge = page.get(page.size() - 1);
+                sentAt = edge.sentAt();
+                messageId = edge.messageId();
+            }
+        } while (page.size() == 2);
+
+        assertThat(visited).containsExactly(1L, 2L, 3L, 10L, 7L);
+    }
+
+    private void persistMessage(Long id, ChatRoom chatRoom, OffsetDateTime sentAt) {
+        entityManager.persist(Message.builder()
+                .id(id)
+                .content("message " + id)
+                .sender(sender)
+                .chatRoom(chatRoom)
+                .sentAt(sentAt)
+                .updatedAt(sentAt)
+                .build());
+    }
+
+    static User user(String email) {
+        return User.builder()
+                .firstName("Test")
+                .lastName("User")
+                .email(email)
+                .password("password")
+                .role(Role.ROLE_USER)
+                .status(Status.OFFLINE)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .isAuthenticated(true)
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isCredentialsNonExpired(true)
+                .isAccountNonLocked(true)
+                .build();
+    }
+
+    static ChatRoom room(User creator) {
+        return ChatRoom.builder()
+                .name("room")
+                .creator(creator)
+                .type(ChatRoomType.GROUP)
+                .createdAt(OffsetDateTime.now())
+                .updatedAt(OffsetDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,33 @@
+package com.raul.chat.services.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DirectoryCursorTest {
+
+    @Test
+    void roundTripKeepsLastUser() {
+        UUID userId = UUID.randomUUID();
+
+        assertThat(DirectoryCursor.decode(new DirectoryCursor(userId).encode()).lastUserId()).isEqualTo(userId);
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        assertThat(new DirectoryCursor(UUID.randomUUID()).encode()).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThatThrownBy(() -> DirectoryCursor.decode("not a cursor"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+        assertThatThrownBy(() -> DirectoryCursor.decode(new DirectoryCursor(UUID.randomUUID()).encode().substring(4)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+    }
+}
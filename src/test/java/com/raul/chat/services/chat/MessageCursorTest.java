@@ -0,0 +1,41 @@
+package com.raul.chat.services.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageCursorTest {
+
+    @Test
+    void roundTripKeepsPosition() {
+        OffsetDateTime sentAt = OffsetDateTime.of(2025, 3, 14, 15, 9, 26, 535_897_000, ZoneOffset.ofHours(4));
+        MessageCursor cursor = new MessageCursor(sentAt, 9_007_199_254_740_993L);
+
+        MessageCursor decoded = MessageCursor.decode(cursor.encode());
+
+        assertThat(decoded.sentAt().toInstant()).isEqualTo(sentAt.toInstant());
+        assertThat(decoded.sentAt().getOffset()).isEqualTo(ZoneOffset.UTC);
+        assertThat(decoded.messageId()).isEqualTo(9_007_199_254_740_993L);
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        MessageCursor cursor = new MessageCursor(OffsetDateTime.now(ZoneOffset.UTC), Long.MAX_VALUE);
+
+        assertThat(cursor.encode()).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThatThrownBy(() -> MessageCursor.decode("not a cursor"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+        assertThatThrownBy(() -> MessageCursor.decode(new MessageCursor(
+                OffsetDateTime.now(ZoneOffset.UTC), 1L).encode().substring(3)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
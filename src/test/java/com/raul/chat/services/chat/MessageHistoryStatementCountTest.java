@@ -0,0 +1,160 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.dtos.chat.MemberWatermarkView;
+import com.raul.chat.dtos.chat.MessageDto;
+import com.raul.chat.dtos.chat.MessageView;
+import com.raul.chat.models.chat.ChatRoom;
+import com.raul.chat.models.chat.ChatRoomMembership;
+import com.raul.chat.models.chat.ChatRoomType;
+import com.raul.chat.models.chat.MemberRole;
+import com.raul.chat.models.chat.Message;
+import com.raul.chat.models.user.Role;
+import com.raul.chat.models.user.Status;
+import com.raul.chat.models.user.User;
+import com.raul.chat.repositories.chat.ChatRoomMembershipRepository;
+import com.raul.chat.repositories.chat.MessageRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The history read path must issue the same number of statements whatever the page
+ * size: one for the messages and one for the members' watermarks.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(MessageMapper.class)
+class MessageHistoryStatementCountTest {
+    static final int MESSAGE_COUNT = 200;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Autowired
+    ChatRoomMembershipRepository chatRoomMembershipRepository;
+
+    @Autowired
+    MessageMapper messageMapper;
+
+    Statistics statistics;
+    Long chatRoomId;
+
+    @BeforeEach
+    void setUp() {
+        List<User> members = List.of(
+                entityManager.persist(user("first@chat")),
+                entityManager.persist(user("second@chat")),
+                entityManager.persist(user("third@chat")));
+
+        ChatRoom room = entityManager.persist(ChatRoom.builder()
+                .name("room")
+                .creator(members.get(0))
+                .type(ChatRoomType.GROUP)
+                .createdAt(OffsetDateTime.now())
+                .updatedAt(OffsetDateTime.now())
+                .build());
+        chatRoomId = room.getId();
+
+        OffsetDateTime start = OffsetDateTime.now(ZoneOffset.UTC).minusDays(1);
+        for (User member : members) {
+            entityManager.persist(ChatRoomMembership.builder()
+                    .user(member)
+                    .chatRoom(room)
+                    .role(MemberRole.MEMBER)
+                    .joinedAt(start.minusDays(1))
+                    .lastDeliveredMessageId(50L)
+                    .lastDeliveredSentAt(start.plusSeconds(50))
+                    .lastReadMessageId(20L)
+                    .lastReadSentAt(start.plusSeconds(20))
+                    .build());
+        }
+        for (long id = 1; id <= MESSAGE_COUNT; id++) {
+            OffsetDateTime sentAt = start.plusSeconds(id);
+            entityManager.persist(Message.builder()
+                    .id(id)
+                    .content("message " + id)
+                    .sender(members.get((int) (id % members.size())))
+                    .chatRoom(room)
+                    .sentAt(sentAt)
+                    .updatedAt(sentAt)
+                    .build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithPageSize() {
+        long smallPage = statementsForPage(5);
+        long largePage = statementsForPage(MESSAGE_COUNT);
+
+        assertThat(smallPage).isEqualTo(2);
+        assertThat(largePage).isEqualTo(smallPage);
+    }
+
+    @Test
+    void readPathLoadsNoEntities() {
+        statistics.clear();
+
+        List<MessageDto> page = readPage(MESSAGE_COUNT);
+
+        assertThat(page).hasSize(MESSAGE_COUNT);
+        assertThat(page).allSatisfy(message -> assertThat(message.recipients()).hasSize(2));
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+    }
+
+    private long statementsForPage(int pageSize) {
+        entityManager.clear();
+        statistics.clear();
+        assertThat(readPage(pageSize)).hasSize(pageSize);
+        return statistics.getPrepareStatementCount();
+    }
+
+    // Mirrors ChatService.getMessagePage without the membership check, which is served from cache
+    private List<MessageDto> readPage(int pageSize) {
+        List<MessageView> messages = messageRepository.findLatestPage(chatRoomId, Limit.of(pageSize));
+        List<MemberWatermarkView> watermarks = chatRoomMembershipRepository.findWatermarksByChatRoomId(chatRoomId);
+        return messageMapper.toMessageDtos(messages, watermarks);
+    }
+
+    private static User user(String email) {
+        return User.builder()
+                .firstName("Test")
+                .lastName("User")
+                .email(email)
+                .password("password")
+                .role(Role.ROLE_USER)
+                .status(Status.OFFLINE)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .isAuthenticated(true)
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isCredentialsNonExpired(true)
+                .isAccountNonLocked(true)
+                .build();
+    }
+}
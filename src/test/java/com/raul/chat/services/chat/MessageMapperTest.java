@@ -0,0 +1,81 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.dtos.chat.MemberWatermarkView;
+import com.raul.chat.dtos.chat.MessageDto;
+import com.raul.chat.dtos.chat.MessageView;
+import com.raul.chat.dtos.chat.RecipientDto;
+import com.raul.chat.models.chat.MessageStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageMapperTest {
+    static final OffsetDateTime T0 = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+    static final UUID SENDER = UUID.randomUUID();
+    static final UUID RECIPIENT = UUID.randomUUID();
+
+    final MessageMapper messageMapper = new MessageMapper();
+
+    // Ids disagree with send order: 10 was sent before 7
+    final List<MessageView> history = List.of(
+            message(3L, T0),
+            message(10L, T0.plusSeconds(1)),
+            message(7L, T0.plusSeconds(2)));
+
+    @Test
+    void watermarkCoversMessagesUpToItsPositionInSendOrder() {
+        MemberWatermarkView watermark = watermark(10L, T0.plusSeconds(1), 10L, T0.plusSeconds(1));
+
+        assertThat(statuses(messageMapper.toMessageDtos(history, List.of(watermark))))
+                .containsExactly(MessageStatus.READ, MessageStatus.READ, MessageStatus.SENT);
+    }
+
+    @Test
+    void laterMessageWithSmallerIdIsStillCovered() {
+        MemberWatermarkView watermark = watermark(7L, T0.plusSeconds(2), 3L, T0);
+
+        assertThat(statuses(messageMapper.toMessageDtos(history, List.of(watermark))))
+                .containsExactly(MessageStatus.READ, MessageStatus.DELIVERED, MessageStatus.DELIVERED);
+    }
+
+    @Test
+    void sameInstantInAnotherOffsetIsTheSamePosition() {
+        OffsetDateTime shifted = T0.plusSeconds(1).withOffsetSameInstant(ZoneOffset.ofHours(3));
+        MemberWatermarkView watermark = watermark(10L, shifted, null, null);
+
+        assertThat(statuses(messageMapper.toMessageDtos(history, List.of(watermark))))
+                .containsExactly(MessageStatus.DELIVERED, MessageStatus.DELIVERED, MessageStatus.SENT);
+    }
+
+    @Test
+    void senderIsNotListedAsRecipient() {
+        MemberWatermarkView own = new MemberWatermarkView(SENDER, T0.minusDays(1),
+                null, null, null, null, null, null);
+
+        assertThat(messageMapper.toMessageDtos(history, List.of(own)))
+                .allSatisfy(message -> assertThat(message.recipients()).isEmpty());
+    }
+
+    private static List<MessageStatus> statuses(List<MessageDto> messages) {
+        return messages.stream()
+                .map(message -> message.recipients().get(0))
+                .map(RecipientDto::status)
+                .toList();
+    }
+
+    private static MessageView message(Long id, OffsetDateTime sentAt) {
+        return new MessageView(id, "message " + id, SENDER, 1L, sentAt);
+    }
+
+    private static MemberWatermarkView watermark(Long deliveredId, OffsetDateTime deliveredSentAt,
+                                                 Long readId, OffsetDateTime readSentAt) {
+        return new MemberWatermarkView(RECIPIENT, T0.minusDays(1),
+                deliveredId, deliveredSentAt, deliveredSentAt,
+                readId, readSentAt, readSentAt);
+    }
+}
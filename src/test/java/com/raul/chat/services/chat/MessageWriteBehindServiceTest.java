@@ -0,0 +1,89 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.dtos.chat.MessageView;
+import com.raul.chat.repositories.chat.MessageRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A receipt for a broadcast message can arrive while its insert is still queued; the
+ * message must resolve from the write-behind until its batch is committed.
+ */
+class MessageWriteBehindServiceTest {
+    static final OffsetDateTime SENT_AT = OffsetDateTime.of(2025, 1, 1, 12, 0, 0, 123_456_000, ZoneOffset.UTC);
+
+    final CountDownLatch commit = new CountDownLatch(1);
+    EntityManager entityManager;
+    MessageWriteBehindService messageWriteBehindService;
+
+    @BeforeEach
+    void setUp() {
+        entityManager = mock(EntityManager.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        // Holds every batch until the test lets it commit
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            assertThat(commit.await(5, TimeUnit.SECONDS)).isTrue();
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(mock(TransactionStatus.class));
+        });
+
+        messageWriteBehindService = new MessageWriteBehindService(entityManager, transactionTemplate,
+                mock(SimpMessagingTemplate.class), mock(MessageRepository.class), mock(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(messageWriteBehindService, "batchSize", 10);
+        ReflectionTestUtils.setField(messageWriteBehindService, "lingerMs", 0L);
+        ReflectionTestUtils.setField(messageWriteBehindService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(messageWriteBehindService, "shutdownTimeoutMs", 5_000L);
+        messageWriteBehindService.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        commit.countDown();
+        messageWriteBehindService.stop();
+    }
+
+    @Test
+    void queuedMessageResolvesUntilItsBatchIsCommitted() throws InterruptedException {
+        UUID senderId = UUID.randomUUID();
+        messageWriteBehindService.submit(new PendingMessage(42L, "hello", senderId, 7L,
+                List.of(UUID.randomUUID()), SENT_AT, null));
+
+        assertThat(messageWriteBehindService.findUnpersisted(42L))
+                .contains(new MessageView(42L, "hello", senderId, 7L, SENT_AT));
+
+        commit.countDown();
+        verify(entityManager, timeout(5_000)).persist(any());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (messageWriteBehindService.findUnpersisted(42L).isPresent() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(messageWriteBehindService.findUnpersisted(42L)).isEmpty();
+    }
+
+    @Test
+    void unknownMessageIsNotResolved() {
+        assertThat(messageWriteBehindService.findUnpersisted(43L)).isEmpty();
+    }
+}
@@ -0,0 +1,143 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.dtos.auth.UserDto;
+import com.raul.chat.dtos.chat.OnlineUsersPageDto;
+import com.raul.chat.dtos.chat.PresenceEventDto;
+import com.raul.chat.models.user.Role;
+import com.raul.chat.models.user.Status;
+import com.raul.chat.repositories.chat.ChatRoomMembershipRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OnlineDirectoryServiceTest {
+    static final int MAX_PAGE_SIZE = 3;
+
+    UUID userId;
+    List<UUID> contactIds;
+    Set<UUID> online;
+    SimpMessagingTemplate messagingTemplate;
+    OnlineDirectoryService onlineDirectoryService;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        contactIds = IntStream.range(0, 10).mapToObj(i -> UUID.randomUUID()).sorted().toList();
+        // Every other contact is online
+        online = IntStream.range(0, contactIds.size()).filter(i -> i % 2 == 0)
+                .mapToObj(contactIds::get)
+                .collect(Collectors.toSet());
+
+        ChatRoomMembershipRepository membershipRepository = mock(ChatRoomMembershipRepository.class);
+        // The query returns contacts in no particular order
+        List<UUID> unordered = new ArrayList<>(contactIds);
+        Collections.shuffle(unordered);
+        when(membershipRepository.findContactIdsByUserId(userId)).thenReturn(unordered);
+
+        PresenceService presenceService = mock(PresenceService.class);
+        when(presenceService.partition(anyCollection())).thenAnswer(invocation -> {
+            Collection<UUID> ids = invocation.getArgument(0);
+            return new PresenceSplit(
+                    ids.stream().filter(online::contains).toList(),
+                    ids.stream().filter(id -> !online.contains(id)).toList());
+        });
+
+        UserProfileCache userProfileCache = mock(UserProfileCache.class);
+        when(userProfileCache.getAll(any())).thenAnswer(invocation -> {
+            Collection<UUID> ids = invocation.getArgument(0);
+            return ids.stream().collect(Collectors.toMap(Function.identity(), this::profile));
+        });
+
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        onlineDirectoryService = new OnlineDirectoryService(membershipRepository, presenceService, userProfileCache,
+                messagingTemplate, 2, MAX_PAGE_SIZE, 100, 60);
+    }
+
+    @Test
+    void walkingPagesVisitsEveryOnlineContactOnceInOrder() {
+        List<UUID> visited = new ArrayList<>();
+        String cursor = null;
+        OnlineUsersPageDto page;
+        do {
+            page = onlineDirectoryService.getOnlineContacts(userId, cursor, null);
+            assertThat(page.users()).hasSizeLessThanOrEqualTo(2);
+            page.users().forEach(user -> visited.add(user.userId()));
+            cursor = page.nextCursor();
+        } while (page.hasMore());
+
+        assertThat(visited).containsExactlyElementsOf(
+                contactIds.stream().filter(online::contains).toList());
+    }
+
+    @Test
+    void usersAreReportedOnlineWhateverTheirCachedStatus() {
+        OnlineUsersPageDto page = onlineDirectoryService.getOnlineContacts(userId, null, null);
+
+        assertThat(page.users()).extracting(UserDto::status).containsOnly(Status.ONLINE);
+    }
+
+    @Test
+    void pageSizeIsCappedAtTheMaximum() {
+        OnlineUsersPageDto page = onlineDirectoryService.getOnlineContacts(userId, null, 100);
+
+        assertThat(page.users()).hasSize(MAX_PAGE_SIZE);
+        assertThat(page.hasMore()).isTrue();
+    }
+
+    @Test
+    void cursorOfContactNoLongerListedResumesAfterItsPosition() {
+        // Sorts between the first and second contact without being one of them
+        UUID gone = new UUID(contactIds.get(0).getMostSignificantBits(), contactIds.get(0).getLeastSignificantBits() + 1);
+        assertThat(contactIds).doesNotContain(gone);
+
+        OnlineUsersPageDto page = onlineDirectoryService.getOnlineContacts(userId, new DirectoryCursor(gone).encode(), 1);
+
+        assertThat(page.users()).extracting(UserDto::userId).containsExactly(contactIds.get(2));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> onlineDirectoryService.getOnlineContacts(userId, "not a cursor", null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+    }
+
+    @Test
+    void statusChangeReachesOnlineContactsOnly() {
+        onlineDirectoryService.publishStatus(userId, Status.OFFLINE);
+
+        PresenceEventDto event = new PresenceEventDto(userId, Status.OFFLINE);
+        for (UUID contactId : contactIds) {
+            String destination = "/user/" + contactId + "/queue/presence";
+            if (online.contains(contactId)) {
+                verify(messagingTemplate).convertAndSend(destination, event);
+            } else {
+                verify(messagingTemplate, never()).convertAndSend(eq(destination), any(Object.class));
+            }
+        }
+    }
+
+    private UserDto profile(UUID id) {
+        return new UserDto(id, "Test", "User", id + "@chat", Role.ROLE_USER, null, Status.OFFLINE);
+    }
+}
@@ -0,0 +1,125 @@
+package com.raul.chat.services.chat;
+
+import com.raul.chat.models.user.Status;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two services on one Redis stand in for two nodes holding sessions of the same user.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class PresenceServiceTest {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    static LettuceConnectionFactory connectionFactory;
+
+    StringRedisTemplate stringRedisTemplate;
+    PresenceService firstNode;
+    PresenceService secondNode;
+    UUID userId;
+    String statusKey;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        firstNode = node();
+        secondNode = node();
+        userId = UUID.randomUUID();
+        statusKey = PresenceService.STATUS_KEY_PREFIX + userId;
+    }
+
+    @Test
+    void lastDisconnectAcrossNodesMarksUserOffline() {
+        firstNode.connect("a", userId);
+        secondNode.connect("b", userId);
+
+        firstNode.disconnect("a");
+        assertThat(secondNode.isOnline(userId)).isTrue();
+        assertThat(onlineUsers()).contains(userId.toString());
+
+        secondNode.disconnect("b");
+        assertThat(stringRedisTemplate.hasKey(statusKey)).isFalse();
+        assertThat(onlineUsers()).doesNotContain(userId.toString());
+    }
+
+    @Test
+    void forcedOfflineRemovesOnlyThisNodesField() {
+        firstNode.connect("a", userId);
+        secondNode.connect("b", userId);
+
+        firstNode.updateUserStatus(userId, Status.OFFLINE);
+
+        assertThat(stringRedisTemplate.<String, String>opsForHash().keys(statusKey))
+                .containsExactly(secondNode.nodeId);
+        assertThat(onlineUsers()).contains(userId.toString());
+    }
+
+    @Test
+    void refreshPrunesFieldsOfNodesThatStoppedRefreshing() {
+        // A node that crashed long ago, and one from before deadlines were stored
+        stringRedisTemplate.opsForHash().put(statusKey, "crashed-node", "1");
+        stringRedisTemplate.opsForHash().put(statusKey, "legacy-node", Status.ONLINE.name());
+        firstNode.connect("a", userId);
+
+        firstNode.refresh();
+
+        assertThat(stringRedisTemplate.<String, String>opsForHash().keys(statusKey))
+                .containsExactly(firstNode.nodeId);
+        long deadline = Long.parseLong(stringRedisTemplate.<String, String>opsForHash().get(statusKey, firstNode.nodeId));
+        assertThat(deadline).isGreaterThan(System.currentTimeMillis());
+    }
+
+    @Test
+    void lastLiveNodeLeavingDropsStaleFieldsWithTheKey() {
+        stringRedisTemplate.opsForHash().put(statusKey, "crashed-node", "1");
+        firstNode.connect("a", userId);
+        stringRedisTemplate.opsForHash().put(statusKey, "crashed-node", "1");
+
+        firstNode.disconnect("a");
+
+        assertThat(stringRedisTemplate.hasKey(statusKey)).isFalse();
+        assertThat(onlineUsers()).doesNotContain(userId.toString());
+    }
+
+    private List<String> onlineUsers() {
+        return List.copyOf(stringRedisTemplate.opsForSet().members(PresenceService.ONLINE_USERS_KEY));
+    }
+
+    private PresenceService node() {
+        PresenceService presenceService = new PresenceService(stringRedisTemplate);
+        ReflectionTestUtils.setField(presenceService, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(presenceService, "mirrorTtlMs", 0L);
+        ReflectionTestUtils.setField(presenceService, "mirrorMaxSize", 100L);
+        presenceService.init();
+        return presenceService;
+    }
+}
@@ -0,0 +1,117 @@
+package com.raul.chat.services.redis;
+
+import com.raul.chat.configs.RedisConfig;
+import com.raul.chat.models.user.TokenType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers(disabledWithoutDocker = true)
+class JwtTokenTrackServiceTest {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    static LettuceConnectionFactory connectionFactory;
+
+    JwtTokenTrackService jwtTokenTrackService;
+    UUID userId;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        RedisTemplate<String, Object> redisTemplate = new RedisConfig().redisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+        jwtTokenTrackService = new JwtTokenTrackService(redisTemplate, stringRedisTemplate);
+        ReflectionTestUtils.setField(jwtTokenTrackService, "jwtExpiration", 60_000L);
+        ReflectionTestUtils.setField(jwtTokenTrackService, "refreshJwtExpiration", 120_000L);
+        userId = UUID.randomUUID();
+    }
+
+    @Test
+    void savedTokenIsValidAndUnknownTokenIsNot() {
+        jwtTokenTrackService.saveToken(userId, "token-a", TokenType.ACCESS_TOKEN, 0L);
+
+        assertThat(jwtTokenTrackService.isTokenValid("token-a", userId, TokenType.ACCESS_TOKEN)).isTrue();
+        assertThat(jwtTokenTrackService.isTokenValid("token-b", userId, TokenType.ACCESS_TOKEN)).isFalse();
+    }
+
+    @Test
+    void tokenTypesAreIndexedSeparately() {
+        jwtTokenTrackService.saveToken(userId, "token-a", TokenType.ACCESS_TOKEN, 0L);
+
+        assertThat(jwtTokenTrackService.isTokenValid("token-a", userId, TokenType.REFRESH_TOKEN)).isFalse();
+    }
+
+    @Test
+    void revokeAllInvalidatesEarlierTokensButNotLaterOnes() {
+        jwtTokenTrackService.saveToken(userId, "token-a", TokenType.ACCESS_TOKEN, 0L);
+
+        long epoch = jwtTokenTrackService.revokeAllTokens(userId, TokenType.ACCESS_TOKEN);
+        jwtTokenTrackService.saveToken(userId, "token-b", TokenType.ACCESS_TOKEN, epoch);
+
+        assertThat(epoch).isEqualTo(1L);
+        assertThat(jwtTokenTrackService.isTokenValid("token-a", userId, TokenType.ACCESS_TOKEN)).isFalse();
+        assertThat(jwtTokenTrackService.isTokenValid("token-b", userId, TokenType.ACCESS_TOKEN)).isTrue();
+        assertThat(jwtTokenTrackService.revokeAllTokens(userId, TokenType.ACCESS_TOKEN)).isEqualTo(2L);
+    }
+
+    @Test
+    void interleavedLoginsKeepOnlyTheLaterToken() {
+        long firstEpoch = jwtTokenTrackService.revokeAllTokens(userId, TokenType.ACCESS_TOKEN);
+        long secondEpoch = jwtTokenTrackService.revokeAllTokens(userId, TokenType.ACCESS_TOKEN);
+        // The first login indexes its token only after the second one bumped the epoch
+        jwtTokenTrackService.saveToken(userId, "token-b", TokenType.ACCESS_TOKEN, secondEpoch);
+        jwtTokenTrackService.saveToken(userId, "token-a", TokenType.ACCESS_TOKEN, firstEpoch);
+
+        assertThat(jwtTokenTrackService.isTokenValid("token-a", userId, TokenType.ACCESS_TOKEN)).isFalse();
+        assertThat(jwtTokenTrackService.isTokenValid("token-b", userId, TokenType.ACCESS_TOKEN)).isTrue();
+    }
+
+    @Test
+    void revokeTokenInvalidatesOnlyThatToken() {
+        jwtTokenTrackService.saveToken(userId, "token-a", TokenType.ACCESS_TOKEN, 0L);
+        jwtTokenTrackService.saveToken(userId, "token-b", TokenType.ACCESS_TOKEN, 0L);
+
+        jwtTokenTrackService.revokeToken(userId, "token-a", TokenType.ACCESS_TOKEN);
+
+        assertThat(jwtTokenTrackService.isTokenValid("token-a", userId, TokenType.ACCESS_TOKEN)).isFalse();
+        assertThat(jwtTokenTrackService.isTokenValid("token-b", userId, TokenType.ACCESS_TOKEN)).isTrue();
+    }
+
+    @Test
+    void indexKeysExpireWithTheNewestToken() {
+        jwtTokenTrackService.saveToken(userId, "token-a", TokenType.ACCESS_TOKEN, 0L);
+
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        Long ttl = stringRedisTemplate.getExpire("token:index:jwt:" + userId);
+        assertThat(ttl).isBetween(1L, 60L);
+    }
+}
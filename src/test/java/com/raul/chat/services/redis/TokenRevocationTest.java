@@ -0,0 +1,45 @@
+package com.raul.chat.services.redis;
+
+import com.raul.chat.models.user.TokenType;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenRevocationTest {
+    static final UUID USER_ID = UUID.randomUUID();
+
+    @Test
+    void roundTripsThroughItsWireFormat() {
+        TokenRevocation all = TokenRevocation.allBefore(USER_ID, TokenType.ACCESS_TOKEN, 7L);
+        TokenRevocation single = TokenRevocation.single(USER_ID, TokenType.REFRESH_TOKEN, "abc123");
+
+        assertThat(TokenRevocation.decode(all.encode())).isEqualTo(all);
+        assertThat(TokenRevocation.decode(single.encode())).isEqualTo(single);
+    }
+
+    @Test
+    void epochRevocationSparesTokensIssuedWithItsEpoch() {
+        TokenRevocation revocation = TokenRevocation.allBefore(USER_ID, TokenType.ACCESS_TOKEN, 7L);
+
+        assertThat(revocation.covers(6L, "old")).isTrue();
+        assertThat(revocation.covers(null, "legacy")).isTrue();
+        assertThat(revocation.covers(7L, "fresh")).isFalse();
+    }
+
+    @Test
+    void singleRevocationCoversOnlyThatToken() {
+        TokenRevocation revocation = TokenRevocation.single(USER_ID, TokenType.ACCESS_TOKEN, "abc123");
+
+        assertThat(revocation.covers(1L, "abc123")).isTrue();
+        assertThat(revocation.covers(1L, "other")).isFalse();
+    }
+
+    @Test
+    void rejectsMalformedMessages() {
+        assertThatThrownBy(() -> TokenRevocation.decode(USER_ID.toString()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
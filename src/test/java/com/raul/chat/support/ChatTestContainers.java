@@ -0,0 +1,57 @@
+package com.raul.chat.support;
+
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.utility.MountableFile;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Postgres and Redis as the application runs against them: the schema comes from
+ * {@code db.sql} and the system user {@code ChatService} requires is seeded.
+ */
+public final class ChatTestContainers {
+    static final String SYSTEM_USER = """
+            INSERT INTO users (id, first_name, last_name, email, password, is_authenticated)
+            VALUES (gen_random_uuid(), 'System', 'User', 'system@chat', 'n/a', TRUE);
+            """;
+
+    private ChatTestContainers() {
+    }
+
+    public static PostgreSQLContainer<?> postgres() {
+        return new PostgreSQLContainer<>("postgres:16")
+                .withDatabaseName("chat_db")
+                .withCopyFileToContainer(MountableFile.forHostPath("db.sql"), "/docker-entrypoint-initdb.d/1-schema.sql")
+                .withCopyToContainer(Transferable.of(SYSTEM_USER), "/docker-entrypoint-initdb.d/2-system-user.sql");
+    }
+
+    public static GenericContainer<?> redis() {
+        return new GenericContainer<>("redis:7-alpine")
+                .withCommand("redis-server", "--notify-keyspace-events", "Ex")
+                .withExposedPorts(6379);
+    }
+
+    /**
+     * Properties that point an application context at the containers, on a random port,
+     * without push notifications and with the SQL and STOMP debug logging turned off.
+     */
+    public static Map<String, Object> properties(PostgreSQLContainer<?> postgres, GenericContainer<?> redis) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("spring.datasource.url", postgres.getJdbcUrl());
+        properties.put("spring.datasource.username", postgres.getUsername());
+        properties.put("spring.datasource.password", postgres.getPassword());
+        properties.put("spring.data.redis.host", redis.getHost());
+        properties.put("spring.data.redis.port", redis.getMappedPort(6379));
+        properties.put("spring.jpa.properties.hibernate.show_sql", false);
+        properties.put("spring.devtools.restart.enabled", false);
+        properties.put("chat.push.enabled", false);
+        properties.put("logging.level.org.springframework.web.socket", "WARN");
+        properties.put("logging.level.org.springframework.messaging", "WARN");
+        properties.put("logging.level.com.raul.chat", "WARN");
+        return properties;
+    }
+}